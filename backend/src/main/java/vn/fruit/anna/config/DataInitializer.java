@@ -35,6 +35,7 @@ public class DataInitializer {
         initAdminAccount();
         initCategories();
         initProducts();
+        backfillEffectivePrices();
         initBanners();
         initBlogs();
         initCustomers();
@@ -313,6 +314,14 @@ public class DataInitializer {
         System.out.println("✅ Products inserted.");
     }
 
+    private void backfillEffectivePrices() {
+        // Products created before the effective_price column existed
+        int updated = productRepository.backfillEffectivePrices();
+        if (updated > 0) {
+            System.out.println("✅ Effective price computed for " + updated + " products.");
+        }
+    }
+
     private void initBanners() {
         if (bannerRepository.count() > 0) return;
 
@@ -542,9 +551,7 @@ public class DataInitializer {
             for (int j = 0; j < numberOfItems; j++) {
                 Product product = products.get(random.nextInt(products.size()));
                 Integer quantity = 1 + random.nextInt(5);
-                Double price = product.getSellingPrice()
-                        * quantity
-                        * (1 - (product.getDiscountPercentage() != null ? product.getDiscountPercentage() : 0) / 100);
+                Double price = product.getEffectivePrice() * quantity;
 
                 OrderItem item = OrderItem.builder()
                         .order(order)
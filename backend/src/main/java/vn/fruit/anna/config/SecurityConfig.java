@@ -37,6 +37,8 @@ public class SecurityConfig {
             "/api/customer/**",
             "/api/order/**",
             "/api/mail/**",
+            "/api/media/**",
+            "/api/image-proxy/**",
     };
 
     @Bean
@@ -0,0 +1,23 @@
+package vn.fruit.anna.config;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import vn.fruit.anna.interceptor.ConditionalGetInterceptor;
+
+@Configuration
+@RequiredArgsConstructor
+public class WebConfig implements WebMvcConfigurer {
+
+    // Absent when http.etag.enabled is off
+    private final ObjectProvider<ConditionalGetInterceptor> conditionalGetInterceptor;
+
+    @Override
+    public void addInterceptors(@NonNull InterceptorRegistry registry) {
+        conditionalGetInterceptor.ifAvailable(interceptor -> registry.addInterceptor(interceptor)
+                .addPathPatterns("/api/product/**", "/api/category/**", "/api/banner/**", "/api/blog/**"));
+    }
+}
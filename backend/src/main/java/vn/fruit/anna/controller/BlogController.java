@@ -65,8 +65,17 @@ public class BlogController {
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "10") int size,
             @RequestParam(defaultValue = "createdAt", required = false) String sortBy,
-            @RequestParam(defaultValue = "desc", required = false) String direction
+            @RequestParam(defaultValue = "desc", required = false) String direction,
+            @RequestParam(required = false) String after
     ) {
+        if (after != null) {
+            return ResponseEntity.ok(
+                    new ApiResponse<>(200,
+                            "Blogs searched successfully",
+                            blogService.searchBlogsAfter(title, after, size, direction))
+            );
+        }
+
         return ResponseEntity.ok(
                 new ApiResponse<>(200,
                         "Blogs searched successfully",
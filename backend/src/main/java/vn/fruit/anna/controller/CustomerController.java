@@ -20,8 +20,17 @@ public class CustomerController {
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "10") int size,
             @RequestParam(defaultValue = "createdAt", required = false) String sortBy,
-            @RequestParam(defaultValue = "desc", required = false) String direction
+            @RequestParam(defaultValue = "desc", required = false) String direction,
+            @RequestParam(required = false) String after
     ) {
+        if (after != null) {
+            return ResponseEntity.ok(
+                    new ApiResponse<>(200,
+                            "Get customers successfully",
+                            customerService.searchCustomersAfter(name, after, size, sortBy, direction))
+            );
+        }
+
         return ResponseEntity.ok(
                 new ApiResponse<>(200,
                         "Get customers successfully",
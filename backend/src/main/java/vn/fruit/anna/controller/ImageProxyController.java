@@ -0,0 +1,43 @@
+package vn.fruit.anna.controller;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
+import vn.fruit.anna.service.ImageProxyService;
+
+import java.io.IOException;
+
+@RestController
+@RequestMapping("/api/image-proxy")
+@RequiredArgsConstructor
+public class ImageProxyController {
+
+    private final ImageProxyService imageProxyService;
+
+    @Value("${media.proxy.cache-max-age}")
+    private long cacheMaxAge;
+
+    @Value("${media.local.sendfile-min-size}")
+    private long sendfileMinSize;
+
+    @GetMapping("/{token}")
+    public void proxyImage(@PathVariable String token,
+                           HttpServletRequest request,
+                           HttpServletResponse response) throws IOException {
+        ImageProxyService.CachedImage image = imageProxyService.get(token);
+
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "public, max-age=" + cacheMaxAge + ", immutable");
+        if (new ServletWebRequest(request, response).checkNotModified(image.etag())) {
+            return;
+        }
+
+        FileResponses.write(image.file(), image.contentType(), sendfileMinSize, request, response);
+    }
+}
@@ -0,0 +1,58 @@
+package vn.fruit.anna.controller;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
+import vn.fruit.anna.service.LocalImageStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Serves images kept by the {@link LocalImageStore}.
+ */
+@RestController
+@RequestMapping("/api/media")
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "media.store", havingValue = "local")
+public class MediaController {
+
+    private final LocalImageStore localImageStore;
+
+    @Value("${media.local.cache-max-age}")
+    private long cacheMaxAge;
+
+    @Value("${media.local.sendfile-min-size}")
+    private long sendfileMinSize;
+
+    @GetMapping("/{*key}")
+    public void serveMedia(@PathVariable String key,
+                           HttpServletRequest request,
+                           HttpServletResponse response) throws IOException {
+        Path file = localImageStore.resolve(key.startsWith("/") ? key.substring(1) : key);
+        if (file == null || !Files.isRegularFile(file)) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "public, max-age=" + cacheMaxAge + ", immutable");
+        if (new ServletWebRequest(request, response).checkNotModified(Files.getLastModifiedTime(file).toMillis())) {
+            return;
+        }
+
+        String contentType = MediaTypeFactory.getMediaType(file.getFileName().toString())
+                .orElse(MediaType.APPLICATION_OCTET_STREAM).toString();
+        FileResponses.write(file, contentType, sendfileMinSize, request, response);
+    }
+}
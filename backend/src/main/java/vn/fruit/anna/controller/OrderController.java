@@ -1,6 +1,5 @@
 package vn.fruit.anna.controller;
 
-import jakarta.mail.MessagingException;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.http.ResponseEntity;
@@ -11,9 +10,9 @@ import vn.fruit.anna.dto.request.ListOrdersByIdsRequest;
 import vn.fruit.anna.dto.request.UpdateOrderStatusRequest;
 import vn.fruit.anna.dto.response.ApiResponse;
 import vn.fruit.anna.enums.OrderStatus;
+import vn.fruit.anna.service.IdempotencyService;
 import vn.fruit.anna.service.OrderService;
 
-import java.io.UnsupportedEncodingException;
 import java.util.UUID;
 
 @RestController
@@ -24,12 +23,15 @@ public class OrderController {
     private final OrderService orderService;
 
     @PostMapping
-    public ResponseEntity<?> createOrder(@RequestBody CreateOrderRequest request) throws MessagingException, UnsupportedEncodingException {
+    public ResponseEntity<?> createOrder(
+            @RequestBody CreateOrderRequest request,
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey
+    ) {
         return ResponseEntity.ok(
                 new ApiResponse<>(
                         201,
                         "Order created successfully",
-                        orderService.createOrder(request)
+                        orderService.createOrder(request, idempotencyKey)
                 )
         );
     }
@@ -50,13 +52,22 @@ public class OrderController {
             @RequestParam(required = false) String customerName,
             @RequestParam(required = false) OrderStatus status,
             @RequestParam(defaultValue = "createdAt", required = false) String sortBy,
-            @RequestParam(defaultValue = "desc", required = false) String direction
+            @RequestParam(defaultValue = "desc", required = false) String direction,
+            @RequestParam(required = false) String after
     ) {
         OrderFilter filter = OrderFilter.builder()
                 .customerName(customerName)
                 .status(status)
                 .build();
 
+        if (after != null) {
+            return ResponseEntity.ok(
+                    new ApiResponse<>(200,
+                            "Orders searched successfully",
+                            orderService.searchOrdersAfter(filter, after, size, sortBy, direction))
+            );
+        }
+
         return ResponseEntity.ok(
                 new ApiResponse<>(200,
                         "Orders searched successfully",
@@ -2,6 +2,7 @@ package vn.fruit.anna.controller;
 
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -10,8 +11,12 @@ import vn.fruit.anna.dto.request.CreateProductRequest;
 import vn.fruit.anna.dto.filter.ProductFilter;
 import vn.fruit.anna.dto.request.ListProductsByIdsRequest;
 import vn.fruit.anna.dto.response.ApiResponse;
+import vn.fruit.anna.dto.response.ProductSearchResponse;
+import vn.fruit.anna.service.ProductImportService;
 import vn.fruit.anna.service.ProductService;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 import java.util.UUID;
 
@@ -21,6 +26,7 @@ import java.util.UUID;
 public class ProductController {
 
     private final ProductService productService;
+    private final ProductImportService productImportService;
 
     @PostMapping(value = "/create", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     public ResponseEntity<?> createProduct(
@@ -34,6 +40,17 @@ public class ProductController {
                         productService.createProduct(request, thumbnailImageFile, imageFiles)));
     }
 
+    @PostMapping(value = "/import", consumes = {"text/csv", MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<?> importProducts(
+            InputStream body,
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType
+    ) throws IOException {
+        return ResponseEntity.ok(
+                new ApiResponse<>(200,
+                        "Import products success",
+                        productImportService.importProducts(body, contentType)));
+    }
+
     @PutMapping(value = "/update/{id}", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     public ResponseEntity<?> updateProduct(
             @PathVariable("id") UUID id,
@@ -108,14 +125,34 @@ public class ProductController {
             @RequestParam(required = false) Double minPrice,
             @RequestParam(required = false) Double maxPrice,
             @RequestParam(required = false) String categoryName,
+            @RequestParam(required = false) String origin,
             @RequestParam(defaultValue = "createdAt", required = false) String sortBy,
-            @RequestParam(defaultValue = "desc", required = false) String direction
+            @RequestParam(defaultValue = "desc", required = false) String direction,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "false") boolean facets
     ) {
         ProductFilter filter = new ProductFilter();
         filter.setName(name);
         filter.setMinPrice(minPrice);
         filter.setMaxPrice(maxPrice);
         filter.setCategoryName(categoryName);
+        filter.setOrigin(origin);
+
+        if (after != null) {
+            return ResponseEntity.ok(
+                    new ApiResponse<>(200,
+                            "Products searched successfully",
+                            productService.searchProductsAfter(filter, after, size, sortBy, direction)));
+        }
+
+        if (facets) {
+            return ResponseEntity.ok(
+                    new ApiResponse<>(200,
+                            "Products searched successfully",
+                            new ProductSearchResponse(
+                                    productService.searchProducts(filter, page, size, sortBy, direction),
+                                    productService.countFacets(filter))));
+        }
 
         return ResponseEntity.ok(
                 new ApiResponse<>(200,
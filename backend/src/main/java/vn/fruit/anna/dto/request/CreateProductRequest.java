@@ -5,12 +5,14 @@ import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import lombok.Builder;
 import lombok.Getter;
+import lombok.extern.jackson.Jacksonized;
 import vn.fruit.anna.enums.Unit;
 
 import java.util.List;
 
 @Getter
 @Builder
+@Jacksonized
 public class CreateProductRequest {
     @NotBlank(message = "Product's name cannot be blank!")
     private String name;
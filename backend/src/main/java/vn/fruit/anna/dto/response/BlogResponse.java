@@ -14,6 +14,7 @@ public class BlogResponse {
     private String title;
     private String sapo;
     private String thumbnailImage;
+    private String thumbnailPlaceholder;
     private String content;
     private String author;
     private Date createdAt;
@@ -0,0 +1,47 @@
+package vn.fruit.anna.dto.response;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import org.springframework.beans.factory.annotation.Autowired;
+import vn.fruit.anna.service.ImageProxyService;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Writes a width -> URL srcset map with the URLs routed through the image proxy when it is enabled.
+ *
+ * For lists of srcsets, where {@link ImageUrlSerializer} cannot be applied to the map values.
+ */
+public class ImageSrcsetSerializer extends StdSerializer<Map<Integer, String>> {
+
+    private final ImageProxyService imageProxyService;
+
+    // Used by object mappers that are not managed by Spring; URLs are written unchanged
+    public ImageSrcsetSerializer() {
+        this(null);
+    }
+
+    @Autowired
+    @SuppressWarnings("unchecked")
+    public ImageSrcsetSerializer(ImageProxyService imageProxyService) {
+        super((Class<Map<Integer, String>>) (Class<?>) Map.class);
+        this.imageProxyService = imageProxyService;
+    }
+
+    @Override
+    public void serialize(Map<Integer, String> srcset, JsonGenerator generator, SerializerProvider provider) throws IOException {
+        generator.writeStartObject(srcset);
+        for (Map.Entry<Integer, String> entry : srcset.entrySet()) {
+            generator.writeFieldName(String.valueOf(entry.getKey()));
+            String url = entry.getValue();
+            if (url == null) {
+                generator.writeNull();
+            } else {
+                generator.writeString(imageProxyService != null ? imageProxyService.proxyUrl(url) : url);
+            }
+        }
+        generator.writeEndObject();
+    }
+}
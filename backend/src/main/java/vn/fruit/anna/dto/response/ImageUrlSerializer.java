@@ -0,0 +1,35 @@
+package vn.fruit.anna.dto.response;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import org.springframework.beans.factory.annotation.Autowired;
+import vn.fruit.anna.service.ImageProxyService;
+
+import java.io.IOException;
+
+/**
+ * Writes image URLs through the image proxy when it is enabled.
+ *
+ * Cached responses keep the origin URLs, so switching the proxy on or off never needs a rebuild.
+ */
+public class ImageUrlSerializer extends StdSerializer<String> {
+
+    private final ImageProxyService imageProxyService;
+
+    // Used by object mappers that are not managed by Spring; URLs are written unchanged
+    public ImageUrlSerializer() {
+        this(null);
+    }
+
+    @Autowired
+    public ImageUrlSerializer(ImageProxyService imageProxyService) {
+        super(String.class);
+        this.imageProxyService = imageProxyService;
+    }
+
+    @Override
+    public void serialize(String url, JsonGenerator generator, SerializerProvider provider) throws IOException {
+        generator.writeString(imageProxyService != null ? imageProxyService.proxyUrl(url) : url);
+    }
+}
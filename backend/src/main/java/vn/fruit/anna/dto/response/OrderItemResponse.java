@@ -1,11 +1,15 @@
 package vn.fruit.anna.dto.response;
 
+import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Getter;
+import lombok.NoArgsConstructor;
 
 import java.util.UUID;
 
 @Getter
+@NoArgsConstructor
+@AllArgsConstructor
 @Builder
 public class OrderItemResponse {
     private UUID id;
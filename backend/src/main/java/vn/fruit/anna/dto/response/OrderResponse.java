@@ -1,8 +1,10 @@
 package vn.fruit.anna.dto.response;
 
 
+import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Getter;
+import lombok.NoArgsConstructor;
 import vn.fruit.anna.enums.OrderStatus;
 
 import java.util.Date;
@@ -10,6 +12,8 @@ import java.util.List;
 import java.util.UUID;
 
 @Getter
+@NoArgsConstructor
+@AllArgsConstructor
 @Builder
 public class OrderResponse {
     private UUID id;
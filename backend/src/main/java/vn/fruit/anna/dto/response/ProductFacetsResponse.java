@@ -0,0 +1,25 @@
+package vn.fruit.anna.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+
+import java.util.List;
+import java.util.Map;
+
+@Getter
+@Builder
+public class ProductFacetsResponse {
+    private Map<String, Integer> categories;
+    private Map<String, Integer> origins;
+    private Map<String, Integer> units;
+    private List<PriceBucket> priceBuckets;
+
+    @Getter
+    @AllArgsConstructor
+    public static class PriceBucket {
+        private Double from;
+        private Double to;
+        private Integer count;
+    }
+}
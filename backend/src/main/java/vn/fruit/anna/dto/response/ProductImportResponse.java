@@ -0,0 +1,19 @@
+package vn.fruit.anna.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+@Getter
+@AllArgsConstructor
+public class ProductImportResponse {
+    private long totalRows;
+    private long imported;
+    private long rejected;
+    // Capped at product.import.max-reported-errors; rejected keeps the full count
+    private List<RowError> errors;
+
+    public record RowError(long row, String message) {
+    }
+}
@@ -1,28 +1,72 @@
 package vn.fruit.anna.dto.response;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import lombok.*;
 import vn.fruit.anna.enums.Unit;
+import vn.fruit.anna.model.ImageVariants;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 @Getter
 @Setter
 @NoArgsConstructor
 @AllArgsConstructor
-@Builder
+@Builder(toBuilder = true)
 public class ProductResponse {
     private UUID id;
     private String name;
     private String origin;
     private String description;
+    @JsonSerialize(using = ImageUrlSerializer.class)
     private String thumbnailImage;
+    private ImageVariants thumbnailImageVariants;
+    // Width -> URL, filled by ResponsiveImageService
+    @JsonSerialize(contentUsing = ImageUrlSerializer.class)
+    private Map<Integer, String> thumbnailImageSrcset;
     private Double originalPrice;
     private Double sellingPrice;
     private Double discountPercentage;
+    private Double effectivePrice;
     private Unit unit;
     private Integer stock;
     private Integer minUnitToOrder;
     private String categoryName;
+    // Row version of the product, only used by the in-memory read models
+    @JsonIgnore
+    private long version;
+    @JsonSerialize(contentUsing = ImageUrlSerializer.class)
     List<String> images;
+    // Same order as images, null entries for images without variants
+    List<ImageVariants> imageVariants;
+    // Same order as images
+    @JsonSerialize(contentUsing = ImageSrcsetSerializer.class)
+    List<Map<Integer, String>> imageSrcsets;
+
+    // Target of the JPQL constructor expressions in ProductRepository; images are attached afterwards
+    public ProductResponse(UUID id, String name, String origin, String description, String thumbnailImage,
+                           String thumbnailImageThumbnail, String thumbnailImageCard, String thumbnailImagePlaceholder, Double originalPrice, Double sellingPrice, Double discountPercentage,
+                           Double effectivePrice, Unit unit, Integer stock, Integer minUnitToOrder,
+                           String categoryName, long version) {
+        this.id = id;
+        this.name = name;
+        this.origin = origin;
+        this.description = description;
+        this.thumbnailImage = thumbnailImage;
+        this.thumbnailImageVariants = ImageVariants.of(thumbnailImageThumbnail, thumbnailImageCard, thumbnailImagePlaceholder);
+        this.originalPrice = originalPrice;
+        this.sellingPrice = sellingPrice;
+        this.discountPercentage = discountPercentage;
+        this.effectivePrice = effectivePrice;
+        this.unit = unit;
+        this.stock = stock;
+        this.minUnitToOrder = minUnitToOrder;
+        this.categoryName = categoryName;
+        this.version = version;
+        this.images = new ArrayList<>();
+        this.imageVariants = new ArrayList<>();
+    }
 }
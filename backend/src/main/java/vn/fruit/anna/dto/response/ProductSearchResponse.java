@@ -0,0 +1,12 @@
+package vn.fruit.anna.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.data.domain.Page;
+
+@Getter
+@AllArgsConstructor
+public class ProductSearchResponse {
+    private Page<?> products;
+    private ProductFacetsResponse facets;
+}
@@ -0,0 +1,6 @@
+package vn.fruit.anna.enums;
+
+public enum AssetDeletionStatus {
+    PENDING,
+    PARKED
+}
@@ -0,0 +1,47 @@
+package vn.fruit.anna.event;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import vn.fruit.anna.dto.response.ProductResponse;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Published by {@code ProductService} whenever product data is written.
+ * In-memory read models listen for it after the surrounding transaction commits,
+ * so they never observe data that could still be rolled back.
+ */
+@Getter
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class ProductChangedEvent {
+
+    private final List<ProductResponse> upserted;
+
+    private final Collection<UUID> deletedIds;
+
+    private final Map<UUID, StockLevel> stockChanges;
+
+    public static ProductChangedEvent upserted(List<ProductResponse> products) {
+        return new ProductChangedEvent(products, List.of(), Map.of());
+    }
+
+    public static ProductChangedEvent deleted(Collection<UUID> productIds) {
+        return new ProductChangedEvent(List.of(), productIds, Map.of());
+    }
+
+    public static ProductChangedEvent stockChanged(Map<UUID, StockLevel> stockChanges) {
+        return new ProductChangedEvent(List.of(), List.of(), stockChanges);
+    }
+
+    /**
+     * Absolute stock of a product with the row version it was read at. Listeners run after their
+     * own commit, so changes to the same row can arrive out of order; one older than what a read
+     * model already holds must be dropped.
+     */
+    public record StockLevel(int stock, long version) {
+    }
+}
@@ -0,0 +1,27 @@
+package vn.fruit.anna.event;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import vn.fruit.anna.service.ResourceVersionService;
+
+/**
+ * Entity listener that bumps the version of public read resources after they are written.
+ */
+@Component
+@RequiredArgsConstructor
+public class ResourceVersionListener {
+
+    // Resolved lazily: entity listeners are created while the EntityManagerFactory is still being built
+    private final ObjectProvider<ResourceVersionService> resourceVersionService;
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void onWrite(Object entity) {
+        resourceVersionService.getObject().touch(entity.getClass());
+    }
+}
@@ -1,5 +1,6 @@
 package vn.fruit.anna.exception;
 
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.security.authentication.BadCredentialsException;
@@ -77,6 +78,12 @@ public class GlobalExceptionHandler {
         return createApiErrorResponse(HttpStatus.CONFLICT, e.getMessage(), request);
     }
 
+    @ExceptionHandler(ServiceUnavailableException.class)
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public ApiErrorResponse handleServiceUnavailableException(ServiceUnavailableException e, WebRequest request) {
+        return createApiErrorResponse(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage(), request);
+    }
+
     @ExceptionHandler(SQLIntegrityConstraintViolationException.class)
     @ResponseStatus(HttpStatus.CONFLICT)
     public ApiErrorResponse handleSQLIntegrityConstraintViolationException(SQLIntegrityConstraintViolationException e,
@@ -84,6 +91,13 @@ public class GlobalExceptionHandler {
         return createApiErrorResponse(HttpStatus.CONFLICT, "Database constraint violation", request);
     }
 
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    @ResponseStatus(HttpStatus.CONFLICT)
+    public ApiErrorResponse handleOptimisticLockingFailureException(OptimisticLockingFailureException e,
+                                                                    WebRequest request) {
+        return createApiErrorResponse(HttpStatus.CONFLICT, "The data was changed by another request, please retry", request);
+    }
+
     @ExceptionHandler(IllegalStateException.class)
     @ResponseStatus(HttpStatus.BAD_REQUEST)
     public ApiErrorResponse handleIllegalStateException(IllegalStateException e, WebRequest request) {
@@ -0,0 +1,73 @@
+package vn.fruit.anna.interceptor;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.HandlerInterceptor;
+import vn.fruit.anna.service.ResourceVersionService;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Answers conditional GETs on public catalog endpoints before the controller runs.
+ *
+ * The ETag is the version of the resource types the endpoint reads, so a matching If-None-Match
+ * gets a 304 without a database query or JSON serialization. The version is per resource type,
+ * which means any write to a type also invalidates its single-item responses.
+ */
+@Component
+@ConditionalOnProperty(name = "http.etag.enabled", havingValue = "true", matchIfMissing = true)
+@RequiredArgsConstructor
+public class ConditionalGetInterceptor implements HandlerInterceptor {
+
+    // Product responses embed the category name, so they also depend on categories
+    private static final Map<String, String[]> RESOURCES_BY_PATH = new LinkedHashMap<>();
+
+    static {
+        RESOURCES_BY_PATH.put("/api/product/", new String[]{ResourceVersionService.PRODUCT, ResourceVersionService.CATEGORY});
+        RESOURCES_BY_PATH.put("/api/category/", new String[]{ResourceVersionService.CATEGORY});
+        RESOURCES_BY_PATH.put("/api/banner/", new String[]{ResourceVersionService.BANNER});
+        RESOURCES_BY_PATH.put("/api/blog/", new String[]{ResourceVersionService.BLOG});
+    }
+
+    // Clients may reuse a response, but must revalidate it first
+    private static final String CACHE_CONTROL = CacheControl.noCache().cachePublic().getHeaderValue();
+
+    private final ResourceVersionService resourceVersionService;
+
+    @Override
+    public boolean preHandle(@NonNull HttpServletRequest request,
+                             @NonNull HttpServletResponse response,
+                             @NonNull Object handler) {
+        if (!HttpMethod.GET.matches(request.getMethod()) && !HttpMethod.HEAD.matches(request.getMethod())) {
+            return true;
+        }
+
+        String[] resources = resourcesFor(request.getRequestURI().substring(request.getContextPath().length()));
+        if (resources == null) {
+            return true;
+        }
+
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CACHE_CONTROL);
+
+        // Sets the ETag header, and the 304 status when If-None-Match matches
+        return !new ServletWebRequest(request, response).checkNotModified(resourceVersionService.etag(resources));
+    }
+
+    private static String[] resourcesFor(String path) {
+        for (Map.Entry<String, String[]> entry : RESOURCES_BY_PATH.entrySet()) {
+            if (path.startsWith(entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,43 @@
+package vn.fruit.anna.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import vn.fruit.anna.enums.AssetDeletionStatus;
+
+import java.util.Date;
+
+/**
+ * Outbox entry for an image that must be removed from the image store.
+ *
+ * Written in the same transaction as the change that orphaned the image and removed once the
+ * asset is gone. Entries that keep failing are parked for manual inspection. {@code released}
+ * is set once the entry has given back its media reference, so a retry never releases it twice.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Table(indexes = @Index(name = "idx_asset_deletion_due", columnList = "status, next_attempt_at"))
+public class AssetDeletion extends BaseEntity {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String url;
+
+    @Enumerated(EnumType.STRING)
+    private AssetDeletionStatus status;
+
+    private int attempts;
+
+    private boolean released;
+
+    @Column(name = "next_attempt_at")
+    private Date nextAttemptAt;
+
+    @Column(columnDefinition = "TEXT")
+    private String lastError;
+}
@@ -1,13 +1,16 @@
 package vn.fruit.anna.model;
 
 import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import lombok.*;
 import vn.fruit.anna.enums.BannerType;
+import vn.fruit.anna.event.ResourceVersionListener;
 
 @Entity
+@EntityListeners(ResourceVersionListener.class)
 @Getter
 @Setter
 @NoArgsConstructor
@@ -21,5 +24,9 @@ public class Banner extends BaseEntity {
     private String title;
 
     private String thumbnailImage;
+
+    // BlurHash of the thumbnail, painted until it loads
+    private String thumbnailPlaceholder;
+
     private BannerType bannerType;
 }
@@ -2,8 +2,10 @@ package vn.fruit.anna.model;
 
 import jakarta.persistence.*;
 import lombok.*;
+import vn.fruit.anna.event.ResourceVersionListener;
 
 @Entity
+@EntityListeners(ResourceVersionListener.class)
 @Getter
 @Setter
 @NoArgsConstructor
@@ -19,6 +21,9 @@ public class Blog extends BaseEntity {
 
     private String thumbnailImage;
 
+    // BlurHash of the thumbnail, painted until it loads
+    private String thumbnailPlaceholder;
+
     @Column(columnDefinition = "TEXT")
     private String sapo;
 
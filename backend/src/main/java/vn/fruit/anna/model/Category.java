@@ -4,11 +4,13 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.*;
 import org.hibernate.annotations.BatchSize;
+import vn.fruit.anna.event.ResourceVersionListener;
 
 import java.util.HashSet;
 import java.util.Set;
 
 @Entity
+@EntityListeners(ResourceVersionListener.class)
 @Getter
 @Setter
 @NoArgsConstructor
@@ -24,6 +26,9 @@ public class Category extends BaseEntity {
 
     private String thumbnailImage;
 
+    // BlurHash of the thumbnail, painted until it loads
+    private String thumbnailPlaceholder;
+
     @OneToMany(mappedBy = "category")
     @JsonIgnore
     private Set<Product> products = new HashSet<>();
@@ -0,0 +1,34 @@
+package vn.fruit.anna.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.util.Date;
+
+/**
+ * Response of a request sent with an {@code Idempotency-Key}, replayed when the key is sent again.
+ *
+ * The row is inserted in the same transaction as the work it describes, so a key is only taken
+ * once that work has committed. {@code fingerprint} is the SHA-256 of the request body.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Table(indexes = @Index(name = "idx_idempotent_request_expires_at", columnList = "expires_at"))
+public class IdempotentRequest extends BaseEntity {
+    @Id
+    @Column(length = 128)
+    private String idempotencyKey;
+
+    @Column(nullable = false, length = 64)
+    private String fingerprint;
+
+    @Column(columnDefinition = "TEXT", nullable = false)
+    private String response;
+
+    @Column(name = "expires_at", nullable = false)
+    private Date expiresAt;
+}
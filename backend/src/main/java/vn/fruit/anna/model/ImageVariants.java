@@ -0,0 +1,40 @@
+package vn.fruit.anna.model;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import jakarta.persistence.Embeddable;
+import lombok.*;
+import vn.fruit.anna.dto.response.ImageUrlSerializer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Smaller renditions of an image; the main image URL is the detail-size rendition.
+ * The placeholder is a BlurHash string painted until the image loads.
+ */
+@Embeddable
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ImageVariants {
+    @JsonSerialize(using = ImageUrlSerializer.class)
+    private String thumbnail;
+    @JsonSerialize(using = ImageUrlSerializer.class)
+    private String card;
+    private String placeholder;
+
+    public static ImageVariants of(String thumbnail, String card, String placeholder) {
+        return thumbnail == null && card == null && placeholder == null
+                ? null
+                : new ImageVariants(thumbnail, card, placeholder);
+    }
+
+    public List<String> urls() {
+        List<String> urls = new ArrayList<>(2);
+        if (thumbnail != null) urls.add(thumbnail);
+        if (card != null) urls.add(card);
+        return urls;
+    }
+}
@@ -0,0 +1,44 @@
+package vn.fruit.anna.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import vn.fruit.anna.enums.MailOutboxStatus;
+
+import java.util.Date;
+
+/**
+ * Outbox entry for an order confirmation mail.
+ *
+ * Written in the same transaction as the order, so only committed orders are mailed. The payload
+ * is a JSON snapshot of the order response, which is all the mail needs to be rendered; entries
+ * are removed once sent and moved to the dead letter state after too many failed attempts.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Table(indexes = @Index(name = "idx_mail_outbox_due", columnList = "status, next_attempt_at"))
+public class MailOutbox extends BaseEntity {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String recipient;
+
+    @Column(columnDefinition = "TEXT", nullable = false)
+    private String payload;
+
+    @Enumerated(EnumType.STRING)
+    private MailOutboxStatus status;
+
+    private int attempts;
+
+    @Column(name = "next_attempt_at")
+    private Date nextAttemptAt;
+
+    @Column(columnDefinition = "TEXT")
+    private String lastError;
+}
@@ -0,0 +1,47 @@
+package vn.fruit.anna.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import vn.fruit.anna.enums.MediaProfile;
+
+/**
+ * An uploaded image, keyed by the SHA-256 of its source bytes and how it was processed.
+ *
+ * Re-uploading the same content reuses the stored URLs and increments the reference count;
+ * the files are only deleted from storage when the last reference is released.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Table(
+        uniqueConstraints = @UniqueConstraint(name = "uk_media_asset_digest", columnNames = {"digest", "profile"}),
+        indexes = @Index(name = "idx_media_asset_url", columnList = "url")
+)
+public class MediaAsset extends BaseEntity {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 64)
+    private String digest;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private MediaProfile profile;
+
+    @Column(nullable = false)
+    private String url;
+
+    @Embedded
+    @AttributeOverrides({
+            @AttributeOverride(name = "thumbnail", column = @Column(name = "variant_thumbnail")),
+            @AttributeOverride(name = "card", column = @Column(name = "variant_card")),
+            @AttributeOverride(name = "placeholder", column = @Column(name = "variant_placeholder"))
+    })
+    private ImageVariants variants;
+
+    private int refCount;
+}
@@ -17,6 +17,7 @@ import java.util.*;
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
+@Table(indexes = @Index(name = "idx_product_effective_price", columnList = "effective_price"))
 public class Product extends BaseEntity {
     @Id
     @GeneratedValue(strategy = GenerationType.UUID)
@@ -32,17 +33,34 @@ public class Product extends BaseEntity {
 
     private String thumbnailImage;
 
+    @Embedded
+    @AttributeOverrides({
+            @AttributeOverride(name = "thumbnail", column = @Column(name = "thumbnail_image_thumbnail")),
+            @AttributeOverride(name = "card", column = @Column(name = "thumbnail_image_card")),
+            @AttributeOverride(name = "placeholder", column = @Column(name = "thumbnail_image_placeholder"))
+    })
+    private ImageVariants thumbnailImageVariants;
+
     private Double originalPrice;
 
     private Double sellingPrice;
 
     private Double discountPercentage;
 
+    // sellingPrice after discount, kept in sync so price filters and sorting can use an index
+    @Column(name = "effective_price")
+    private Double effectivePrice;
+
     @Enumerated(EnumType.STRING)
     private Unit unit;
 
     private Integer stock;
 
+    // Bumped by every write, including the native stock updates, so caches can tell stale changes apart
+    @Version
+    @Column(nullable = false, columnDefinition = "bigint not null default 0")
+    private long version;
+
     private Integer minUnitToOrder;
 
     @BatchSize(size = 20)
@@ -53,4 +71,17 @@ public class Product extends BaseEntity {
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "category_id")
     private Category category;
+
+    @PrePersist
+    @PreUpdate
+    public void updateEffectivePrice() {
+        this.effectivePrice = calculateEffectivePrice(sellingPrice, discountPercentage);
+    }
+
+    public static Double calculateEffectivePrice(Double sellingPrice, Double discountPercentage) {
+        if (sellingPrice == null) {
+            return null;
+        }
+        return sellingPrice * (1 - (discountPercentage != null ? discountPercentage : 0) / 100);
+    }
 }
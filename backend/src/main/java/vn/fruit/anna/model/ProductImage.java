@@ -21,6 +21,14 @@ public class ProductImage extends BaseEntity {
 
     private String image;
 
+    @Embedded
+    @AttributeOverrides({
+            @AttributeOverride(name = "thumbnail", column = @Column(name = "image_thumbnail")),
+            @AttributeOverride(name = "card", column = @Column(name = "image_card")),
+            @AttributeOverride(name = "placeholder", column = @Column(name = "image_placeholder"))
+    })
+    private ImageVariants variants;
+
     @ManyToOne
     @JoinColumn(name = "product_id")
     private Product product;
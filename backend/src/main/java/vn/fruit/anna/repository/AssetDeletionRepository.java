@@ -0,0 +1,79 @@
+package vn.fruit.anna.repository;
+
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import vn.fruit.anna.enums.AssetDeletionStatus;
+import vn.fruit.anna.model.AssetDeletion;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface AssetDeletionRepository extends JpaRepository<AssetDeletion, Long> {
+
+    String ENQUEUE = "INSERT INTO AssetDeletion (url, status, attempts, released, nextAttemptAt, createdAt, updatedAt) ";
+    String PENDING_NOW = "vn.fruit.anna.enums.AssetDeletionStatus.PENDING, 0, false, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP ";
+
+    // SKIP LOCKED, so several instances can claim due entries without releasing one twice
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    List<AssetDeletion> findByStatusAndNextAttemptAtLessThanEqualOrderByIdAsc(AssetDeletionStatus status,
+                                                                               Date now,
+                                                                               Pageable pageable);
+
+    // Bulk enqueues are INSERT ... SELECT, so they cost one statement however many rows are deleted
+
+    @Modifying
+    @Query(ENQUEUE + "SELECT p.thumbnailImage, " + PENDING_NOW +
+            "FROM Product p WHERE p.id IN :productIds AND p.thumbnailImage IS NOT NULL AND p.thumbnailImage <> ''")
+    int enqueueProductThumbnails(@Param("productIds") Collection<UUID> productIds);
+
+    @Modifying
+    @Query(ENQUEUE + "SELECT p.thumbnailImageVariants.thumbnail, " + PENDING_NOW +
+            "FROM Product p WHERE p.id IN :productIds AND p.thumbnailImageVariants.thumbnail IS NOT NULL")
+    int enqueueProductThumbnailSmallVariants(@Param("productIds") Collection<UUID> productIds);
+
+    @Modifying
+    @Query(ENQUEUE + "SELECT p.thumbnailImageVariants.card, " + PENDING_NOW +
+            "FROM Product p WHERE p.id IN :productIds AND p.thumbnailImageVariants.card IS NOT NULL")
+    int enqueueProductThumbnailCardVariants(@Param("productIds") Collection<UUID> productIds);
+
+    @Modifying
+    @Query(ENQUEUE + "SELECT i.image, " + PENDING_NOW +
+            "FROM ProductImage i WHERE i.product.id IN :productIds AND i.image IS NOT NULL AND i.image <> ''")
+    int enqueueProductImages(@Param("productIds") Collection<UUID> productIds);
+
+    @Modifying
+    @Query(ENQUEUE + "SELECT i.variants.thumbnail, " + PENDING_NOW +
+            "FROM ProductImage i WHERE i.product.id IN :productIds AND i.variants.thumbnail IS NOT NULL")
+    int enqueueProductImageSmallVariants(@Param("productIds") Collection<UUID> productIds);
+
+    @Modifying
+    @Query(ENQUEUE + "SELECT i.variants.card, " + PENDING_NOW +
+            "FROM ProductImage i WHERE i.product.id IN :productIds AND i.variants.card IS NOT NULL")
+    int enqueueProductImageCardVariants(@Param("productIds") Collection<UUID> productIds);
+
+    default void enqueueProductAssets(Collection<UUID> productIds) {
+        enqueueProductThumbnails(productIds);
+        enqueueProductThumbnailSmallVariants(productIds);
+        enqueueProductThumbnailCardVariants(productIds);
+        enqueueProductImages(productIds);
+        enqueueProductImageSmallVariants(productIds);
+        enqueueProductImageCardVariants(productIds);
+    }
+
+    @Modifying
+    @Query(ENQUEUE + "SELECT b.thumbnailImage, " + PENDING_NOW +
+            "FROM Blog b WHERE b.id IN :blogIds AND b.thumbnailImage IS NOT NULL AND b.thumbnailImage <> ''")
+    int enqueueBlogThumbnails(@Param("blogIds") Collection<Long> blogIds);
+}
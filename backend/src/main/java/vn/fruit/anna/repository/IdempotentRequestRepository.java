@@ -0,0 +1,35 @@
+package vn.fruit.anna.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import vn.fruit.anna.model.IdempotentRequest;
+
+import java.util.Date;
+import java.util.Optional;
+
+@Repository
+public interface IdempotentRequestRepository extends JpaRepository<IdempotentRequest, String> {
+
+    Optional<IdempotentRequest> findByIdempotencyKeyAndExpiresAtAfter(String idempotencyKey, Date now);
+
+    // A plain INSERT, unlike save(), fails on a taken key instead of merging into it
+    @Modifying
+    @Query(value = "INSERT INTO idempotent_request (idempotency_key, fingerprint, response, expires_at, created_at, updated_at) " +
+            "VALUES (:idempotencyKey, :fingerprint, :response, :expiresAt, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)",
+            nativeQuery = true)
+    int insert(@Param("idempotencyKey") String idempotencyKey,
+               @Param("fingerprint") String fingerprint,
+               @Param("response") String response,
+               @Param("expiresAt") Date expiresAt);
+
+    @Modifying
+    @Query("DELETE FROM IdempotentRequest r WHERE r.idempotencyKey = :idempotencyKey AND r.expiresAt <= :now")
+    int deleteExpired(@Param("idempotencyKey") String idempotencyKey, @Param("now") Date now);
+
+    @Modifying
+    @Query("DELETE FROM IdempotentRequest r WHERE r.expiresAt <= :now")
+    int deleteAllExpired(@Param("now") Date now);
+}
@@ -0,0 +1,25 @@
+package vn.fruit.anna.repository;
+
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.stereotype.Repository;
+import vn.fruit.anna.enums.MailOutboxStatus;
+import vn.fruit.anna.model.MailOutbox;
+
+import java.util.Date;
+import java.util.List;
+
+@Repository
+public interface MailOutboxRepository extends JpaRepository<MailOutbox, Long> {
+
+    // SKIP LOCKED, so several instances can claim due entries without sending one twice
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    List<MailOutbox> findByStatusAndNextAttemptAtLessThanEqualOrderByIdAsc(MailOutboxStatus status,
+                                                                           Date now,
+                                                                           Pageable pageable);
+}
@@ -0,0 +1,42 @@
+package vn.fruit.anna.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import vn.fruit.anna.enums.MediaProfile;
+import vn.fruit.anna.model.MediaAsset;
+
+import java.util.Optional;
+
+@Repository
+public interface MediaAssetRepository extends JpaRepository<MediaAsset, Long> {
+
+    Optional<MediaAsset> findByDigestAndProfile(String digest, MediaProfile profile);
+
+    Optional<MediaAsset> findByUrl(String url);
+
+    @Query("SELECT COUNT(m) > 0 FROM MediaAsset m WHERE m.variants.thumbnail = :url OR m.variants.card = :url")
+    boolean existsByVariantUrl(@Param("url") String url);
+
+    @Modifying
+    @Query("UPDATE MediaAsset m SET m.refCount = m.refCount + 1 WHERE m.id = :id")
+    int incrementRefCount(@Param("id") Long id);
+
+    @Modifying
+    @Query("UPDATE MediaAsset m SET m.refCount = m.refCount - 1 WHERE m.id = :id")
+    int decrementRefCount(@Param("id") Long id);
+
+    @Modifying
+    @Query("DELETE FROM MediaAsset m WHERE m.id = :id AND m.refCount <= 0")
+    int deleteIfUnreferenced(@Param("id") Long id);
+
+    // Images stored before media assets existed, or seeded, may be shared by several rows
+    @Query(value = "SELECT (SELECT COUNT(*) FROM product WHERE thumbnail_image = :url) " +
+            "+ (SELECT COUNT(*) FROM product_image WHERE image = :url) " +
+            "+ (SELECT COUNT(*) FROM category WHERE thumbnail_image = :url) " +
+            "+ (SELECT COUNT(*) FROM banner WHERE thumbnail_image = :url) " +
+            "+ (SELECT COUNT(*) FROM blog WHERE thumbnail_image = :url)", nativeQuery = true)
+    long countRowsReferencing(@Param("url") String url);
+}
@@ -5,31 +5,73 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import vn.fruit.anna.dto.response.ProductResponse;
 import vn.fruit.anna.model.Product;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
 @Repository
 public interface ProductRepository extends JpaRepository<Product, UUID>, JpaSpecificationExecutor<Product> {
-    List<Product> findAllByThumbnailImageIsNotNull();
+
+    String PRODUCT_RESPONSE_PROJECTION = "SELECT new vn.fruit.anna.dto.response.ProductResponse(" +
+            "p.id, p.name, p.origin, p.description, p.thumbnailImage, " +
+            "p.thumbnailImageVariants.thumbnail, p.thumbnailImageVariants.card, p.thumbnailImageVariants.placeholder, " +
+            "p.originalPrice, p.sellingPrice, p.discountPercentage, p.effectivePrice, " +
+            "p.unit, p.stock, p.minUnitToOrder, c.name, p.version) " +
+            "FROM Product p LEFT JOIN p.category c ";
+
+    @Query(PRODUCT_RESPONSE_PROJECTION)
+    List<ProductResponse> findAllResponses();
+
+    @Query(PRODUCT_RESPONSE_PROJECTION + "WHERE p.thumbnailImage IS NOT NULL")
+    List<ProductResponse> findAllResponsesWithThumbnail();
+
+    @Query(PRODUCT_RESPONSE_PROJECTION + "WHERE p.id IN :productIds")
+    List<ProductResponse> findResponsesByIds(@Param("productIds") Collection<UUID> productIds);
+
+    @Query(PRODUCT_RESPONSE_PROJECTION + "ORDER BY p.createdAt DESC")
+    List<ProductResponse> findNewestResponses(Pageable pageable);
+
+    // Rows of (productId, imageUrl, thumbnailUrl, cardUrl, placeholder)
+    @Query("SELECT i.product.id, i.image, i.variants.thumbnail, i.variants.card, i.variants.placeholder " +
+            "FROM ProductImage i ORDER BY i.createdAt")
+    List<Object[]> findAllImageUrls();
+
+    @Query("SELECT i.product.id, i.image, i.variants.thumbnail, i.variants.card, i.variants.placeholder FROM ProductImage i " +
+            "WHERE i.product.id IN :productIds ORDER BY i.createdAt")
+    List<Object[]> findImageUrlsByProductIds(@Param("productIds") Collection<UUID> productIds);
+
     @Query("SELECT p FROM Product p WHERE LOWER(p.name) = LOWER(:name)")
     Optional<Product> findByNameExactIgnoreCase(@Param("name") String name);
-    @Query(value = "SELECT * FROM product " +
-            "ORDER BY RAND() " +
-            "LIMIT 12",
-            nativeQuery = true)
-    List<Product> findRandom12Products();
-
-    @Query(value = "SELECT * FROM product " +
-            "ORDER BY created_at DESC " +
-            "LIMIT 8",
-            nativeQuery = true)
-    List<Product> find8NewestProducts();
+
+    @Query("SELECT p.id FROM Product p")
+    List<UUID> findAllIds();
+
+    @Query("SELECT LOWER(p.name) FROM Product p")
+    List<String> findAllLowerCaseNames();
+
+    // Rows of (productId, stock, version)
+    @Query("SELECT p.id, p.stock, p.version FROM Product p WHERE p.id IN :productIds")
+    List<Object[]> findStocksByIds(@Param("productIds") Collection<UUID> productIds);
+
+    // Rows of (productId as string, stock), locked until the transaction ends
+    @Query(value = "SELECT id, stock FROM product WHERE id IN (:productIds) FOR UPDATE", nativeQuery = true)
+    List<Object[]> lockStocksByIds(@Param("productIds") Collection<String> productIds);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE Product p " +
+            "SET p.effectivePrice = p.sellingPrice * (1 - COALESCE(p.discountPercentage, 0) / 100) " +
+            "WHERE p.effectivePrice IS NULL AND p.sellingPrice IS NOT NULL")
+    int backfillEffectivePrices();
 
     @EntityGraph(attributePaths = {"productImages"})
     Page<Product> findByNameContainingIgnoreCase(String name, Pageable pageable);
@@ -0,0 +1,19 @@
+package vn.fruit.anna.repository.specification;
+
+import org.springframework.data.jpa.domain.Specification;
+import vn.fruit.anna.model.Blog;
+
+public class BlogSpecification {
+
+    public static Specification<Blog> titleContains(String title) {
+        return (root, query, criteriaBuilder) -> {
+            if (title == null || title.isEmpty()) {
+                return criteriaBuilder.conjunction();
+            }
+            return criteriaBuilder.like(
+                    criteriaBuilder.lower(root.get("title")),
+                    "%" + title.toLowerCase() + "%"
+            );
+        };
+    }
+}
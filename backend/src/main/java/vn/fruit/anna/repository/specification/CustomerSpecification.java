@@ -0,0 +1,19 @@
+package vn.fruit.anna.repository.specification;
+
+import org.springframework.data.jpa.domain.Specification;
+import vn.fruit.anna.model.Customer;
+
+public class CustomerSpecification {
+
+    public static Specification<Customer> nameContains(String name) {
+        return (root, query, criteriaBuilder) -> {
+            if (name == null || name.isEmpty()) {
+                return criteriaBuilder.conjunction();
+            }
+            return criteriaBuilder.like(
+                    criteriaBuilder.lower(root.get("name")),
+                    "%" + name.toLowerCase() + "%"
+            );
+        };
+    }
+}
@@ -0,0 +1,99 @@
+package vn.fruit.anna.repository.specification;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import vn.fruit.anna.exception.InvalidDataException;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * Opaque "after" token for keyset pagination: the sort field plus the (sortKey, id) pair of the
+ * last row of the previous slice. Values keep their type so they can be bound back into a query.
+ */
+@Getter
+@AllArgsConstructor
+public class KeysetCursor {
+
+    private static final String SEPARATOR = "\n";
+    // Only enums of this package can be named by a cursor
+    private static final String ENUM_PACKAGE = "vn.fruit.anna.enums.";
+
+    private final String sortBy;
+    private final Object sortValue;
+    private final Object id;
+
+    public String encode() {
+        String raw = sortBy + SEPARATOR + encodeValue(sortValue) + SEPARATOR + encodeValue(id);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static KeysetCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = raw.split(SEPARATOR, 3);
+            if (parts.length != 3) {
+                throw new InvalidDataException("Invalid cursor");
+            }
+            return new KeysetCursor(parts[0], decodeValue(parts[1]), decodeValue(parts[2]));
+        } catch (InvalidDataException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            // Malformed base64, truncated values, unparsable numbers or dates
+            throw new InvalidDataException("Invalid cursor", e);
+        }
+    }
+
+    private static String encodeValue(Object value) {
+        if (value == null) return "N:";
+        // Timestamps keep their nanos, otherwise rows sharing the same millisecond could be skipped
+        if (value instanceof Date date) {
+            Instant instant = date instanceof Timestamp timestamp ? timestamp.toInstant() : date.toInstant();
+            return "T:" + instant;
+        }
+        if (value instanceof UUID) return "U:" + value;
+        if (value instanceof Long) return "L:" + value;
+        if (value instanceof Integer) return "I:" + value;
+        if (value instanceof Double) return "D:" + value;
+        if (value instanceof String) return "S:" + value;
+        if (value instanceof Enum<?> constant) return "E:" + constant.getDeclaringClass().getName() + ":" + constant.name();
+        throw new IllegalStateException("Unsupported cursor value: " + value);
+    }
+
+    private static Object decodeValue(String encoded) {
+        String value = encoded.substring(2);
+        return switch (encoded.substring(0, 2)) {
+            case "T:" -> Timestamp.from(Instant.parse(value));
+            case "U:" -> UUID.fromString(value);
+            case "L:" -> Long.valueOf(value);
+            case "I:" -> Integer.valueOf(value);
+            case "D:" -> Double.valueOf(value);
+            case "S:" -> value;
+            case "E:" -> decodeEnum(value);
+            case "N:" -> null;
+            default -> throw new InvalidDataException("Invalid cursor");
+        };
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object decodeEnum(String value) {
+        int separator = value.lastIndexOf(':');
+        String className = value.substring(0, separator);
+        if (!className.startsWith(ENUM_PACKAGE)) {
+            throw new InvalidDataException("Invalid cursor");
+        }
+        try {
+            Class<?> enumClass = Class.forName(className);
+            if (!enumClass.isEnum()) {
+                throw new InvalidDataException("Invalid cursor");
+            }
+            return Enum.valueOf((Class<? extends Enum>) enumClass, value.substring(separator + 1));
+        } catch (ClassNotFoundException e) {
+            throw new InvalidDataException("Invalid cursor", e);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package vn.fruit.anna.repository.specification;
+
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.From;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.JoinType;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.beans.NullValueInNestedPathException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import vn.fruit.anna.dto.response.CursorSliceResponse;
+import vn.fruit.anna.exception.InvalidDataException;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Keyset (seek) pagination on top of any filter specification.
+ *
+ * Instead of OFFSET, each slice continues strictly after the (sortKey, id) pair of the previous slice,
+ * and no COUNT query is issued. Rows with a null sort key come first when ascending and last when
+ * descending, as MySQL orders them.
+ */
+public class KeysetSpecification {
+
+    private static final String ID_FIELD = "id";
+
+    public static <T, R> CursorSliceResponse<R> findSlice(JpaSpecificationExecutor<T> repository,
+                                                          Specification<T> filter,
+                                                          String sortBy,
+                                                          Sort.Direction direction,
+                                                          String after,
+                                                          int size,
+                                                          Function<T, R> mapper) {
+        Specification<T> spec = filter;
+
+        if (after != null && !after.isBlank()) {
+            KeysetCursor cursor = KeysetCursor.decode(after);
+            if (!cursor.getSortBy().equals(sortBy)) {
+                throw new InvalidDataException("Cursor does not match the requested sort");
+            }
+            spec = spec.and(after(sortBy, cursor.getSortValue(), cursor.getId(), direction));
+        }
+
+        Sort.NullHandling nullHandling = direction.isAscending() ? Sort.NullHandling.NULLS_FIRST : Sort.NullHandling.NULLS_LAST;
+        Sort sort = Sort.by(new Sort.Order(direction, sortBy, nullHandling)).and(Sort.by(direction, ID_FIELD));
+
+        // Fetch one extra row to know whether another slice follows
+        List<T> rows = repository.findBy(spec, query -> query.sortBy(sort).limit(size + 1).all());
+
+        boolean hasNext = rows.size() > size;
+        List<T> content = hasNext ? rows.subList(0, size) : rows;
+
+        String nextCursor = null;
+        if (hasNext) {
+            BeanWrapperImpl last = new BeanWrapperImpl(content.get(content.size() - 1));
+            nextCursor = new KeysetCursor(sortBy, sortValue(last, sortBy), last.getPropertyValue(ID_FIELD)).encode();
+        }
+
+        return new CursorSliceResponse<>(content.stream().map(mapper).toList(), size, hasNext, nextCursor);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public static <T> Specification<T> after(String sortBy, Object sortValue, Object id, Sort.Direction direction) {
+        return (root, query, criteriaBuilder) -> {
+            Expression<Comparable> sortPath = (Expression<Comparable>) resolve(root, sortBy);
+            Expression<Comparable> idPath = root.get(ID_FIELD);
+            Comparable key = (Comparable) sortValue;
+            Comparable lastId = (Comparable) id;
+
+            Predicate beyondId = direction.isAscending()
+                    ? criteriaBuilder.greaterThan(idPath, lastId)
+                    : criteriaBuilder.lessThan(idPath, lastId);
+
+            if (key == null) {
+                // The previous slice ended among the nulls: the rest of them, then (ascending) every non-null key
+                Predicate remainingNulls = criteriaBuilder.and(criteriaBuilder.isNull(sortPath), beyondId);
+                return direction.isAscending()
+                        ? criteriaBuilder.or(remainingNulls, criteriaBuilder.isNotNull(sortPath))
+                        : remainingNulls;
+            }
+
+            // (sortKey, id) > (key, lastId) for ascending, < for descending
+            Predicate beyondKey = direction.isAscending()
+                    ? criteriaBuilder.greaterThan(sortPath, key)
+                    : criteriaBuilder.lessThan(sortPath, key);
+            Predicate beyond = criteriaBuilder.or(beyondKey, criteriaBuilder.and(criteriaBuilder.equal(sortPath, key), beyondId));
+
+            // Descending slices end with the null keys
+            return direction.isAscending() ? beyond : criteriaBuilder.or(beyond, criteriaBuilder.isNull(sortPath));
+        };
+    }
+
+    // A null association on a nested sort path, e.g. a product without category, is a null key
+    private static Object sortValue(BeanWrapperImpl row, String sortBy) {
+        try {
+            return row.getPropertyValue(sortBy);
+        } catch (NullValueInNestedPathException e) {
+            return null;
+        }
+    }
+
+    // Left joins like the sort, which reuses them; an implicit join would drop rows with a null association
+    private static Path<?> resolve(Root<?> root, String property) {
+        String[] parts = property.split("\\.");
+        From<?, ?> from = root;
+        for (int i = 0; i < parts.length - 1; i++) {
+            from = leftJoin(from, parts[i]);
+        }
+        return from.get(parts[parts.length - 1]);
+    }
+
+    private static Join<?, ?> leftJoin(From<?, ?> from, String attribute) {
+        for (Join<?, ?> join : from.getJoins()) {
+            if (join.getAttribute().getName().equals(attribute) && join.getJoinType() == JoinType.LEFT) {
+                return join;
+            }
+        }
+        return from.join(attribute, JoinType.LEFT);
+    }
+}
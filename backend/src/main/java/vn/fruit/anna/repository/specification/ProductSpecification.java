@@ -1,13 +1,14 @@
 package vn.fruit.anna.repository.specification;
 
-import jakarta.persistence.criteria.Expression;
 import jakarta.persistence.criteria.Predicate;
 import org.springframework.data.jpa.domain.Specification;
 import vn.fruit.anna.dto.filter.ProductFilter;
 import vn.fruit.anna.model.Product;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.UUID;
 
 public class ProductSpecification {
 
@@ -23,25 +24,12 @@ public class ProductSpecification {
                 ));
             }
 
-            // Filter by selling price (replaces minPrice/maxPrice filtering)
+            // Filter by discounted price, using the indexed effective_price column
             if (filter.getMinPrice() != null) {
-                predicates.add(criteriaBuilder.greaterThanOrEqualTo(root.get("sellingPrice"), filter.getMinPrice()));
+                predicates.add(criteriaBuilder.greaterThanOrEqualTo(root.get("effectivePrice"), filter.getMinPrice()));
             }
             if (filter.getMaxPrice() != null) {
-                // Create the literal for 100 (double)
-                Expression<Double> hundred = criteriaBuilder.literal(100.0);
-
-                // Calculate discount fraction: discountPercentage / 100
-                Expression<Double> discountFraction = criteriaBuilder.quot(root.get("discountPercentage"), hundred).as(Double.class);
-
-                // Calculate 1 - (discountPercentage / 100)
-                Expression<Double> oneMinusDiscount = criteriaBuilder.diff(criteriaBuilder.literal(1.0), discountFraction);
-
-                // Calculate the discount price: sellingPrice * (1 - discountPercentage / 100)
-                Expression<Double> discountPrice = criteriaBuilder.prod(root.get("sellingPrice"), oneMinusDiscount);
-
-                // Add the condition: discount price <= maxPrice
-                predicates.add(criteriaBuilder.lessThanOrEqualTo(discountPrice, filter.getMaxPrice()));
+                predicates.add(criteriaBuilder.lessThanOrEqualTo(root.get("effectivePrice"), filter.getMaxPrice()));
             }
 
             // Filter by category name
@@ -63,4 +51,8 @@ public class ProductSpecification {
             return criteriaBuilder.and(predicates.toArray(new Predicate[0]));
         };
     }
+
+    public static Specification<Product> idIn(Collection<UUID> productIds) {
+        return (root, query, criteriaBuilder) -> root.get("id").in(productIds);
+    }
 }
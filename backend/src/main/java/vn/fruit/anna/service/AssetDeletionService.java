@@ -0,0 +1,207 @@
+package vn.fruit.anna.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import vn.fruit.anna.enums.AssetDeletionStatus;
+import vn.fruit.anna.model.AssetDeletion;
+import vn.fruit.anna.repository.AssetDeletionRepository;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Durable queue of stored images to delete.
+ *
+ * Callers enqueue URLs inside their own transaction, so an asset is only scheduled for deletion
+ * when the change that orphaned it commits, and a storage outage never rolls that change back.
+ * Before deleting, the worker gives back the entry's media reference; images that are still
+ * referenced elsewhere are dropped from the queue instead of deleted.
+ * A background worker claims due entries under a lease, deletes them in multi-ID batches, retries
+ * failures with exponential backoff and parks entries that still fail after the maximum number of
+ * attempts.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class AssetDeletionService {
+
+    private final AssetDeletionRepository assetDeletionRepository;
+    private final ImageStore imageStore;
+    private final MediaAssetService mediaAssetService;
+    private final TransactionTemplate transactionTemplate;
+
+    // Cloudinary accepts at most 100 public IDs per delete call
+    @Value("${media.deletion.batch-size}")
+    private int batchSize;
+
+    // Longer than a batch can take; a claim left by a crashed instance is retried after it
+    @Value("${media.deletion.lease-ms}")
+    private long leaseMs;
+
+    @Value("${media.deletion.max-attempts}")
+    private int maxAttempts;
+
+    @Value("${media.deletion.retry-delay-ms}")
+    private long retryDelayMs;
+
+    @Value("${media.deletion.max-retry-delay-ms}")
+    private long maxRetryDelayMs;
+
+    @Transactional
+    public void enqueue(Collection<String> urls) {
+        Date now = new Date();
+        List<AssetDeletion> entries = urls.stream()
+                .filter(url -> url != null && !url.isBlank())
+                .map(url -> AssetDeletion.builder()
+                        .url(url)
+                        .status(AssetDeletionStatus.PENDING)
+                        .nextAttemptAt(now)
+                        .build())
+                .toList();
+
+        if (!entries.isEmpty()) {
+            assetDeletionRepository.saveAll(entries);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${media.deletion.poll-interval-ms}")
+    public void drain() {
+        List<AssetDeletion> batch;
+        do {
+            batch = claim();
+            if (!batch.isEmpty()) {
+                process(batch);
+            }
+        } while (batch.size() == batchSize);
+    }
+
+    // Moves the next attempt past the lease, so other polls leave the entries alone while they are processed
+    private List<AssetDeletion> claim() {
+        return transactionTemplate.execute(status -> {
+            List<AssetDeletion> due = assetDeletionRepository.findByStatusAndNextAttemptAtLessThanEqualOrderByIdAsc(
+                    AssetDeletionStatus.PENDING, new Date(), PageRequest.of(0, batchSize));
+            Date leaseEnd = new Date(System.currentTimeMillis() + leaseMs);
+            due.forEach(entry -> entry.setNextAttemptAt(leaseEnd));
+            return assetDeletionRepository.saveAll(due);
+        });
+    }
+
+    private void process(List<AssetDeletion> due) {
+        List<AssetDeletion> batch = release(due);
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        List<AssetDeletion> done = new ArrayList<>();
+        List<AssetDeletion> failed = new ArrayList<>();
+        Map<String, List<AssetDeletion>> byKey = new LinkedHashMap<>();
+
+        for (AssetDeletion entry : batch) {
+            String key;
+            try {
+                key = imageStore.keyOf(entry.getUrl());
+            } catch (RuntimeException e) {
+                // A URL that cannot be parsed will never succeed
+                park(entry, "Unparsable asset URL", failed);
+                continue;
+            }
+
+            if (key == null || key.isBlank()) {
+                // Not kept by the current store, nothing to delete
+                done.add(entry);
+            } else {
+                byKey.computeIfAbsent(key, k -> new ArrayList<>()).add(entry);
+            }
+        }
+
+        if (!byKey.isEmpty()) {
+            try {
+                Set<String> deleted = imageStore.delete(byKey.keySet());
+                byKey.forEach((key, entries) -> {
+                    if (deleted.contains(key)) {
+                        done.addAll(entries);
+                    } else {
+                        entries.forEach(entry -> fail(entry, "Image store did not delete " + key, failed));
+                    }
+                });
+            } catch (IOException | RuntimeException e) {
+                log.warn("Deleting {} stored images failed: {}", byKey.size(), e.getMessage());
+                byKey.values().forEach(entries -> entries.forEach(entry -> fail(entry, e.getMessage(), failed)));
+            }
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            assetDeletionRepository.deleteAllInBatch(done);
+            assetDeletionRepository.saveAll(failed);
+        });
+    }
+
+    /**
+     * Releases the references of entries that have not done so yet and returns the entries whose
+     * images are no longer used. Freed variants are queued as entries of their own.
+     */
+    private List<AssetDeletion> release(List<AssetDeletion> batch) {
+        return transactionTemplate.execute(status -> {
+            List<AssetDeletion> deletable = new ArrayList<>();
+            List<AssetDeletion> stillUsed = new ArrayList<>();
+            List<AssetDeletion> freed = new ArrayList<>();
+
+            for (AssetDeletion entry : batch) {
+                if (entry.isReleased()) {
+                    deletable.add(entry);
+                    continue;
+                }
+
+                List<String> unusedUrls = mediaAssetService.release(entry.getUrl());
+                if (unusedUrls.isEmpty()) {
+                    stillUsed.add(entry);
+                    continue;
+                }
+
+                entry.setReleased(true);
+                deletable.add(entry);
+                unusedUrls.stream()
+                        .filter(url -> !url.equals(entry.getUrl()))
+                        .map(url -> AssetDeletion.builder()
+                                .url(url)
+                                .status(AssetDeletionStatus.PENDING)
+                                .released(true)
+                                .nextAttemptAt(new Date())
+                                .build())
+                        .forEach(freed::add);
+            }
+
+            assetDeletionRepository.deleteAllInBatch(stillUsed);
+            assetDeletionRepository.saveAll(freed);
+            return assetDeletionRepository.saveAll(deletable);
+        });
+    }
+
+    private void fail(AssetDeletion entry, String error, List<AssetDeletion> failed) {
+        int attempts = entry.getAttempts() + 1;
+        entry.setAttempts(attempts);
+        entry.setLastError(error);
+
+        if (attempts >= maxAttempts) {
+            park(entry, error, failed);
+            return;
+        }
+
+        long delay = Math.min(retryDelayMs << Math.min(attempts - 1, 30), maxRetryDelayMs);
+        entry.setNextAttemptAt(new Date(System.currentTimeMillis() + delay));
+        failed.add(entry);
+    }
+
+    private void park(AssetDeletion entry, String error, List<AssetDeletion> failed) {
+        entry.setStatus(AssetDeletionStatus.PARKED);
+        entry.setLastError(error);
+        log.error("Parked deletion of asset {} after {} attempts: {}", entry.getUrl(), entry.getAttempts(), error);
+        failed.add(entry);
+    }
+}
@@ -2,7 +2,6 @@ package vn.fruit.anna.service;
 
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 import vn.fruit.anna.dto.request.CreateBannerRequest;
 import vn.fruit.anna.enums.BannerType;
@@ -17,7 +16,7 @@ import java.util.List;
 public class BannerService {
 
     private final BannerRepository bannerRepository;
-    private final CloudinaryService cloudinaryService;
+    private final ImageUploadService imageUploadService;
 
     /** Unused methods removed for brevity **/
     public Banner createBanner(CreateBannerRequest request) {
@@ -29,31 +28,39 @@ public class BannerService {
         return bannerRepository.save(banner);
     }
 
-    @Transactional
     public Banner updateBannerImage(Integer bannerId, MultipartFile imageFile) {
-        Banner banner = bannerRepository.findById(bannerId)
-                .orElseThrow(() -> new RuntimeException("Banner not found with ID: " + bannerId));
-
-        String oldUrl = banner.getThumbnailImage();
-
+        // Upload before any query, so no JDBC connection is held while Cloudinary responds
+        ImageUploadService.UploadedImage uploaded = null;
         if (imageFile != null && !imageFile.isEmpty()) {
             try {
-                String uploadedUrl = cloudinaryService.uploadImage(imageFile);
-                banner.setThumbnailImage(uploadedUrl);
-
-                if (oldUrl != null && !oldUrl.isBlank()) {
-                    String publicId = cloudinaryService.getPublicIdFromUrl(oldUrl);
-                    cloudinaryService.deleteAsset(publicId);
-                }
-
+                uploaded = imageUploadService.upload(imageFile);
             } catch (IOException e) {
                 throw new RuntimeException("Failed to upload new banner image", e);
             }
         }
 
-        return bannerRepository.save(banner);
+        ImageUploadService.UploadedImage newImage = uploaded;
+        return imageUploadService.saveUploaded("banner.update-image", newImage != null ? newImage.urls() : List.of(), replacedUrls -> {
+            Banner banner = bannerRepository.findById(bannerId)
+                    .orElseThrow(() -> new RuntimeException("Banner not found with ID: " + bannerId));
+
+            if (newImage != null) {
+                // The old image is deleted from Cloudinary after commit
+                String oldUrl = banner.getThumbnailImage();
+                if (oldUrl != null && !oldUrl.isBlank()) {
+                    replacedUrls.add(oldUrl);
+                }
+                banner.setThumbnailImage(newImage.url());
+                banner.setThumbnailPlaceholder(placeholderOf(newImage));
+            }
+
+            return bannerRepository.save(banner);
+        });
     }
 
+    private static String placeholderOf(ImageUploadService.UploadedImage image) {
+        return image.variants() != null ? image.variants().getPlaceholder() : null;
+    }
 
     public List<Banner> getAllBanners() {
         return bannerRepository.findAll();
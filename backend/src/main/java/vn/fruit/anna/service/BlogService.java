@@ -10,9 +10,13 @@ import org.springframework.web.multipart.MultipartFile;
 import vn.fruit.anna.dto.request.CreateBlogRequest;
 import vn.fruit.anna.dto.request.ListBlogsByIdsRequest;
 import vn.fruit.anna.dto.response.BlogResponse;
+import vn.fruit.anna.dto.response.CursorSliceResponse;
 import vn.fruit.anna.exception.ResourceNotFoundException;
 import vn.fruit.anna.model.Blog;
+import vn.fruit.anna.repository.AssetDeletionRepository;
 import vn.fruit.anna.repository.BlogRepository;
+import vn.fruit.anna.repository.specification.BlogSpecification;
+import vn.fruit.anna.repository.specification.KeysetSpecification;
 
 import java.io.IOException;
 import java.util.List;
@@ -22,82 +26,92 @@ import java.util.List;
 public class BlogService {
 
     private final BlogRepository blogRepository;
-    private final CloudinaryService cloudinaryService;
+    private final AssetDeletionRepository assetDeletionRepository;
+    private final ImageUploadService imageUploadService;
+    private final ResourceVersionService resourceVersionService;
 
-    @Transactional
     public BlogResponse createBlog(CreateBlogRequest request, MultipartFile imageFile) {
+        ImageUploadService.UploadedImage image = uploadImage(imageFile, "Failed to upload image for blog");
+        String uploadedUrl = image != null ? image.url() : null;
+
         Blog blog = Blog.builder()
                 .title(request.getTitle())
                 .sapo(request.getSapo())
                 .content(request.getContent())
                 .author(request.getAuthor())
+                .thumbnailImage(uploadedUrl)
+                .thumbnailPlaceholder(placeholderOf(image))
                 .build();
 
-        if (imageFile != null && !imageFile.isEmpty()) {
-            try {
-                String uploadedUrl = cloudinaryService.uploadImage(imageFile);
-                blog.setThumbnailImage(uploadedUrl);
-            } catch (IOException e) {
-                throw new RuntimeException("Failed to upload image for blog", e);
-            }
-        }
-
-        blogRepository.save(blog);
-        return toResponse(blog);
+        return imageUploadService.saveUploaded("blog.create", uploadedUrls(uploadedUrl), replacedUrls -> {
+            blogRepository.save(blog);
+            return toResponse(blog);
+        });
     }
 
-    @Transactional
     public BlogResponse updateBlog(Long id, CreateBlogRequest request, MultipartFile imageFile) {
-        Blog blog = blogRepository.findById(id)
-                .orElseThrow(() -> new IllegalArgumentException("Blog not found with ID: " + id));
+        // Upload before any query, so no JDBC connection is held while Cloudinary responds
+        ImageUploadService.UploadedImage image = uploadImage(imageFile, "Failed to upload new image for blog");
+        String uploadedUrl = image != null ? image.url() : null;
 
-        blog.setTitle(request.getTitle());
-        blog.setSapo(request.getSapo());
-        blog.setContent(request.getContent());
-        blog.setAuthor(request.getAuthor());
+        return imageUploadService.saveUploaded("blog.update", uploadedUrls(uploadedUrl), replacedUrls -> {
+            Blog blog = blogRepository.findById(id)
+                    .orElseThrow(() -> new IllegalArgumentException("Blog not found with ID: " + id));
 
-        String oldUrl = blog.getThumbnailImage();
-
-        if (imageFile != null && !imageFile.isEmpty()) {
-            try {
-                String uploadedUrl = cloudinaryService.uploadImage(imageFile);
-                blog.setThumbnailImage(uploadedUrl);
+            blog.setTitle(request.getTitle());
+            blog.setSapo(request.getSapo());
+            blog.setContent(request.getContent());
+            blog.setAuthor(request.getAuthor());
 
+            if (uploadedUrl != null) {
+                // The old image is deleted from Cloudinary after commit
+                String oldUrl = blog.getThumbnailImage();
                 if (oldUrl != null && !oldUrl.isBlank()) {
-                    String publicId = cloudinaryService.getPublicIdFromUrl(oldUrl);
-                    cloudinaryService.deleteAsset(publicId);
+                    replacedUrls.add(oldUrl);
                 }
-            } catch (IOException e) {
-                throw new RuntimeException("Failed to upload new image for blog", e);
+                blog.setThumbnailImage(uploadedUrl);
+                blog.setThumbnailPlaceholder(placeholderOf(image));
             }
+
+            blogRepository.save(blog);
+            return toResponse(blog);
+        });
+    }
+
+    private ImageUploadService.UploadedImage uploadImage(MultipartFile imageFile, String errorMessage) {
+        if (imageFile == null || imageFile.isEmpty()) {
+            return null;
+        }
+        try {
+            return imageUploadService.upload(imageFile);
+        } catch (IOException e) {
+            throw new RuntimeException(errorMessage, e);
         }
+    }
+
+    private static List<String> uploadedUrls(String uploadedUrl) {
+        return uploadedUrl != null ? List.of(uploadedUrl) : List.of();
+    }
 
-        blogRepository.save(blog);
-        return toResponse(blog);
+    private static String placeholderOf(ImageUploadService.UploadedImage image) {
+        return image != null && image.variants() != null ? image.variants().getPlaceholder() : null;
     }
 
 
     @Transactional
     public void deleteBlogsByIds(ListBlogsByIdsRequest request) {
         List<Long> blogIds = request.getBlogIds();
-        List<Blog> blogs = blogRepository.findAllById(blogIds);
 
-        if (!blogs.isEmpty()) {
-            for (Blog blog : blogs) {
-                String oldUrl = blog.getThumbnailImage();
+        if (blogIds == null || blogIds.isEmpty()) {
+            return;
+        }
 
-                if (oldUrl != null && !oldUrl.isBlank()) {
-                    String publicId = cloudinaryService.getPublicIdFromUrl(oldUrl);
-                    try {
-                        cloudinaryService.deleteAsset(publicId);
-                    } catch (IOException e) {
-                        throw new RuntimeException("Failed to delete image for blog", e);
-                    }
-                }
-            }
+        // Images are removed from Cloudinary by the asset deletion worker once this commits
+        assetDeletionRepository.enqueueBlogThumbnails(blogIds);
+        blogRepository.deleteAllByIdInBatch(blogIds);
 
-            blogRepository.deleteAll(blogs);
-        }
+        // A bulk delete bypasses the entity listener
+        resourceVersionService.touch(Blog.class);
     }
 
 
@@ -130,12 +144,25 @@ public class BlogService {
                 .map(this::toResponse);
     }
 
+    public CursorSliceResponse<BlogResponse> searchBlogsAfter(String title,
+                                                              String after,
+                                                              int size,
+                                                              String direction) {
+        Sort.Direction sortDirection = direction.equalsIgnoreCase("desc")
+                ? Sort.Direction.DESC
+                : Sort.Direction.ASC;
+
+        return KeysetSpecification.findSlice(blogRepository, BlogSpecification.titleContains(title),
+                "createdAt", sortDirection, after, size, this::toResponse);
+    }
+
     private BlogResponse toResponse(Blog blog) {
         return BlogResponse.builder()
                 .id(blog.getId())
                 .title(blog.getTitle())
                 .sapo(blog.getSapo())
                 .thumbnailImage(blog.getThumbnailImage())
+                .thumbnailPlaceholder(blog.getThumbnailPlaceholder())
                 .content(blog.getContent())
                 .author(blog.getAuthor())
                 .createdAt(blog.getCreatedAt())
@@ -2,7 +2,6 @@ package vn.fruit.anna.service;
 
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 import vn.fruit.anna.dto.request.CreateCategoryRequest;
 import vn.fruit.anna.dto.request.UpdateCategoryImageRequest;
@@ -12,93 +11,111 @@ import vn.fruit.anna.repository.CategoryRepository;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Service
 @RequiredArgsConstructor
 public class CategoryService {
     private final CategoryRepository categoryRepository;
-    private final CloudinaryService cloudinaryService;
+    private final ImageUploadService imageUploadService;
 
-    @Transactional
     public Category createCategory(CreateCategoryRequest request, MultipartFile imageFile) {
-        Category category = Category.builder()
-                .name(request.getName())
-                .build();
-
+        ImageUploadService.UploadedImage image = null;
         if (imageFile != null && !imageFile.isEmpty()) {
             try {
-                String imageUrl = cloudinaryService.uploadImage(imageFile);
-                category.setThumbnailImage(imageUrl);
+                image = imageUploadService.upload(imageFile);
             } catch (IOException e) {
                 throw new RuntimeException("Failed to upload category image", e);
             }
         }
 
-        return categoryRepository.save(category);
+        Category category = Category.builder()
+                .name(request.getName())
+                .thumbnailImage(image != null ? image.url() : null)
+                .thumbnailPlaceholder(placeholderOf(image))
+                .build();
+
+        return imageUploadService.saveUploaded("category.create", image != null ? List.of(image.url()) : List.of(),
+                replacedUrls -> categoryRepository.save(category));
     }
 
-    @Transactional
     public Category updateCategoryImage(Integer categoryId, MultipartFile imageFile) {
         if (imageFile == null || imageFile.isEmpty()) {
             throw new IllegalArgumentException("No image file uploaded");
         }
 
-        Category category = categoryRepository.findById(categoryId)
-                .orElseThrow(() -> new ResourceNotFoundException("Category not found with ID: " + categoryId));
-
-        String oldUrl = category.getThumbnailImage();
-
+        // Upload before any query, so no JDBC connection is held while Cloudinary responds
+        ImageUploadService.UploadedImage newImage;
         try {
-            String newImageUrl = cloudinaryService.uploadImage(imageFile);
-            category.setThumbnailImage(newImageUrl);
-
-            if (oldUrl != null && !oldUrl.isBlank()) {
-                String publicId = cloudinaryService.getPublicIdFromUrl(oldUrl);
-                cloudinaryService.deleteAsset(publicId);
-            }
-
+            newImage = imageUploadService.upload(imageFile);
         } catch (IOException e) {
             throw new RuntimeException("Failed to upload new category image", e);
         }
 
-        return categoryRepository.save(category);
+        return imageUploadService.saveUploaded("category.update-image", List.of(newImage.url()), replacedUrls -> {
+            Category category = categoryRepository.findById(categoryId)
+                    .orElseThrow(() -> new ResourceNotFoundException("Category not found with ID: " + categoryId));
+
+            replaceThumbnail(category, newImage, replacedUrls);
+            return categoryRepository.save(category);
+        });
     }
 
 
-    @Transactional
     public List<Category> updateMultipleCategoryImages(List<UpdateCategoryImageRequest> requests,
                                                        List<MultipartFile> imageFiles) {
-        List<Category> updatedCategories = new ArrayList<>();
+        List<Integer> categoryIdsToUpload = new ArrayList<>();
+        List<MultipartFile> filesToUpload = new ArrayList<>();
 
         for (int i = 0; i < requests.size(); i++) {
-            Integer categoryId = requests.get(i).getCategoryId();
             MultipartFile imageFile = imageFiles.get(i);
+            if (imageFile != null && !imageFile.isEmpty()) {
+                categoryIdsToUpload.add(requests.get(i).getCategoryId());
+                filesToUpload.add(imageFile);
+            }
+        }
 
-            Category category = categoryRepository.findById(categoryId)
-                    .orElseThrow(() -> new ResourceNotFoundException("Category not found with ID: " + categoryId));
+        List<ImageUploadService.UploadedImage> images;
+        try {
+            images = imageUploadService.uploadAll(filesToUpload);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Error uploading image to Cloudinary", e);
+        }
 
-            String oldUrl = category.getThumbnailImage();
+        List<String> imageUrls = images.stream().map(ImageUploadService.UploadedImage::url).toList();
+        return imageUploadService.saveUploaded("category.update-images", imageUrls, replacedUrls -> {
+            List<Category> updatedCategories = new ArrayList<>();
+            Map<Integer, Category> categoriesById = new HashMap<>();
 
-            if (imageFile != null && !imageFile.isEmpty()) {
-                try {
-                    String imageUrl = cloudinaryService.uploadImage(imageFile);
-                    category.setThumbnailImage(imageUrl);
-
-                    if (oldUrl != null && !oldUrl.isBlank()) {
-                        String publicId = cloudinaryService.getPublicIdFromUrl(oldUrl);
-                        cloudinaryService.deleteAsset(publicId);
-                    }
-
-                } catch (IOException e) {
-                    throw new IllegalArgumentException("Error uploading image to Cloudinary", e);
-                }
+            for (UpdateCategoryImageRequest request : requests) {
+                Integer categoryId = request.getCategoryId();
+                Category category = categoriesById.computeIfAbsent(categoryId, id -> categoryRepository.findById(id)
+                        .orElseThrow(() -> new ResourceNotFoundException("Category not found with ID: " + id)));
+                updatedCategories.add(category);
+            }
+
+            for (int i = 0; i < categoryIdsToUpload.size(); i++) {
+                replaceThumbnail(categoriesById.get(categoryIdsToUpload.get(i)), images.get(i), replacedUrls);
             }
 
-            updatedCategories.add(category);
+            return categoryRepository.saveAll(updatedCategories);
+        });
+    }
+
+    // The old image is deleted from Cloudinary after commit
+    private void replaceThumbnail(Category category, ImageUploadService.UploadedImage newImage, List<String> replacedUrls) {
+        String oldUrl = category.getThumbnailImage();
+        if (oldUrl != null && !oldUrl.isBlank()) {
+            replacedUrls.add(oldUrl);
         }
+        category.setThumbnailImage(newImage.url());
+        category.setThumbnailPlaceholder(placeholderOf(newImage));
+    }
 
-        return categoryRepository.saveAll(updatedCategories);
+    private static String placeholderOf(ImageUploadService.UploadedImage image) {
+        return image != null && image.variants() != null ? image.variants().getPlaceholder() : null;
     }
 
     public List<Category> getAllCategory() {
@@ -2,23 +2,38 @@ package vn.fruit.anna.service;
 import com.cloudinary.Cloudinary;
 import com.cloudinary.utils.ObjectUtils;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
-import org.springframework.web.multipart.MultipartFile;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Service
-public class CloudinaryService {
+@ConditionalOnProperty(name = "media.store", havingValue = "cloudinary", matchIfMissing = true)
+public class CloudinaryService implements ImageStore {
+
+    private static final Set<String> DELETED_RESULTS = Set.of("deleted", "not_found");
+    private static final String UPLOAD_PATH = "/image/upload/";
 
     private final Cloudinary cloudinary;
+    private final long chunkedThreshold;
+    private final int chunkSize;
 
     // Injecting Cloudinary credentials from environment variables
     public CloudinaryService(
             @Value("${CLOUDINARY_CLOUD_NAME}") String cloudName,
             @Value("${CLOUDINARY_API_KEY}") String apiKey,
-            @Value("${CLOUDINARY_API_SECRET}") String apiSecret
+            @Value("${CLOUDINARY_API_SECRET}") String apiSecret,
+            @Value("${media.upload.chunked-threshold}") long chunkedThreshold,
+            @Value("${media.upload.chunk-size}") int chunkSize
     ) {
+        this.chunkedThreshold = chunkedThreshold;
+        this.chunkSize = chunkSize;
+
         // Initialize Cloudinary with environment variables
         this.cloudinary = new Cloudinary(ObjectUtils.asMap(
                 "cloud_name", cloudName,
@@ -27,10 +42,64 @@ public class CloudinaryService {
         ));
     }
 
-    public String uploadImage(MultipartFile file) throws IOException {
-        Map uploadResult = cloudinary.uploader().upload(file.getBytes(), ObjectUtils.asMap(
+    @Override
+    public String store(File file) throws IOException {
+        return uploadImage(file);
+    }
+
+    @Override
+    public String keyOf(String url) {
+        return getPublicIdFromUrl(url);
+    }
+
+    @Override
+    public Set<String> delete(Collection<String> publicIds) throws IOException {
+        Map<String, String> results;
+        try {
+            results = deleteAssets(publicIds);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Error deleting assets from Cloudinary", e);
+        }
+
+        if (results == null) {
+            return Set.of();
+        }
+        return results.entrySet().stream()
+                .filter(result -> DELETED_RESULTS.contains(result.getValue()))
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toSet());
+    }
+
+    // Limits the width without upscaling and lets Cloudinary pick the format and quality per client
+    @Override
+    public String resizedUrl(String url, int width) {
+        int upload = url.indexOf(UPLOAD_PATH);
+        if (upload < 0) {
+            return null;
+        }
+
+        int transformationStart = upload + UPLOAD_PATH.length();
+        return url.substring(0, transformationStart)
+                + "c_limit,w_" + width + ",f_auto,q_auto/"
+                + url.substring(transformationStart);
+    }
+
+    // Large files are streamed from disk by the Cloudinary client
+    public String uploadImage(File file) throws IOException {
+        Map options = ObjectUtils.asMap(
                 "folder", "anna" // Specify the folder name in Cloudinary
-        ));
+        );
+
+        // Large files go up in chunks sharing one upload id, so no single request carries the whole file
+        Map uploadResult;
+        if (file.length() > chunkedThreshold) {
+            options.put("chunk_size", chunkSize);
+            uploadResult = cloudinary.uploader().uploadLarge(file, options);
+        } else {
+            uploadResult = cloudinary.uploader().upload(file, options);
+        }
         return (String) uploadResult.get("url");
     }
 
@@ -40,6 +109,17 @@ public class CloudinaryService {
         cloudinary.uploader().destroy(publicId, ObjectUtils.emptyMap());
     }
 
+    /**
+     * Deletes up to 100 assets in one call.
+     *
+     * @return the result per public ID, e.g. "deleted" or "not_found"
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, String> deleteAssets(Collection<String> publicIds) throws Exception {
+        Map result = cloudinary.api().deleteResources(publicIds, ObjectUtils.emptyMap());
+        return (Map<String, String>) result.get("deleted");
+    }
+
     /**
      * Extracts the Cloudinary public ID from a full Cloudinary URL.
      *
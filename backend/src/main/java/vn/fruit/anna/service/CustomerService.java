@@ -9,8 +9,11 @@ import vn.fruit.anna.dto.request.CreateOrderRequest;
 import vn.fruit.anna.dto.request.ListCustomersByIdsRequest;
 import vn.fruit.anna.model.Order;
 import vn.fruit.anna.repository.CustomerRepository;
+import vn.fruit.anna.repository.specification.CustomerSpecification;
+import vn.fruit.anna.repository.specification.KeysetSpecification;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import vn.fruit.anna.dto.response.CursorSliceResponse;
 import vn.fruit.anna.dto.response.CustomerResponse;
 import vn.fruit.anna.model.Customer;
 
@@ -39,6 +42,21 @@ public class CustomerService {
         return customerRepository.findByNameContainingIgnoreCase(name, pageable).map(this::toResponse);
     }
 
+    public CursorSliceResponse<?> searchCustomersAfter(String name, String after, int size, String sortBy, String direction) {
+        Sort.Direction sortDirection = direction.equalsIgnoreCase("desc")
+                ? Sort.Direction.DESC
+                : Sort.Direction.ASC;
+
+        List<String> allowedSortFields = List.of("totalOrders");
+
+        if (!allowedSortFields.contains(sortBy)) {
+            sortBy = "createdAt"; // fallback
+        }
+
+        return KeysetSpecification.findSlice(customerRepository, CustomerSpecification.nameContains(name),
+                sortBy, sortDirection, after, size, this::toResponse);
+    }
+
     @Transactional
     public void deleteCustomersByIds(ListCustomersByIdsRequest request) {
         List<UUID> customerIds = request.getCustomerIds();
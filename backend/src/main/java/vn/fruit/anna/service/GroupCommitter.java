@@ -0,0 +1,103 @@
+package vn.fruit.anna.service;
+
+import lombok.extern.slf4j.Slf4j;
+import vn.fruit.anna.exception.ServiceUnavailableException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * Bounded queue drained by a single writer thread in micro-batches.
+ *
+ * The writer takes up to {@code maxBatch} submissions, waiting at most {@code maxWaitNanos} after
+ * the first one for more to arrive, and hands them to {@code writer} together. The writer completes
+ * each submission's future; anything it leaves open is failed with a
+ * {@link ServiceUnavailableException}, so no caller waits forever.
+ */
+@Slf4j
+final class GroupCommitter<T, R> implements AutoCloseable {
+
+    record Submission<T, R>(T request, CompletableFuture<R> result) {
+    }
+
+    private static final long IDLE_POLL_MS = 100;
+
+    private final BlockingQueue<Submission<T, R>> queue;
+    private final int maxBatch;
+    private final long maxWaitNanos;
+    private final Consumer<List<Submission<T, R>>> writer;
+    private final Thread thread;
+
+    private volatile boolean running = true;
+
+    GroupCommitter(String name, int capacity, int maxBatch, long maxWaitNanos, Consumer<List<Submission<T, R>>> writer) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.maxBatch = maxBatch;
+        this.maxWaitNanos = maxWaitNanos;
+        this.writer = writer;
+        this.thread = Thread.ofPlatform().name(name).start(this::run);
+    }
+
+    /**
+     * Queues the request; returns null when the queue is full or closed.
+     */
+    CompletableFuture<R> offer(T request) {
+        Submission<T, R> submission = new Submission<>(request, new CompletableFuture<>());
+        return running && queue.offer(submission) ? submission.result() : null;
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        running = false;
+        thread.join();
+        // Offers that raced with closing
+        List<Submission<T, R>> left = new ArrayList<>();
+        queue.drainTo(left);
+        left.forEach(submission -> submission.result().completeExceptionally(new ServiceUnavailableException("Shutting down")));
+    }
+
+    private void run() {
+        List<Submission<T, R>> batch = new ArrayList<>(maxBatch);
+        while (running || !queue.isEmpty()) {
+            try {
+                Submission<T, R> first = queue.poll(IDLE_POLL_MS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+
+                batch.add(first);
+                long deadline = System.nanoTime() + maxWaitNanos;
+                while (batch.size() < maxBatch) {
+                    queue.drainTo(batch, maxBatch - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= maxBatch || remaining <= 0) {
+                        break;
+                    }
+                    Submission<T, R> next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                write(batch);
+            } catch (InterruptedException e) {
+                log.warn("Group commit writer interrupted with {} queued requests", queue.size());
+            } finally {
+                batch.forEach(submission -> submission.result().completeExceptionally(
+                        new ServiceUnavailableException("Request was not written")));
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<Submission<T, R>> batch) {
+        try {
+            writer.accept(batch);
+        } catch (RuntimeException | Error e) {
+            log.error("Group commit of {} requests failed", batch.size(), e);
+            batch.forEach(submission -> submission.result().completeExceptionally(e));
+        }
+    }
+}
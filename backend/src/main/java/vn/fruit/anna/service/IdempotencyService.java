@@ -0,0 +1,208 @@
+package vn.fruit.anna.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import vn.fruit.anna.dto.response.OrderResponse;
+import vn.fruit.anna.exception.DataInUseException;
+import vn.fruit.anna.exception.InvalidDataException;
+import vn.fruit.anna.exception.ServiceUnavailableException;
+import vn.fruit.anna.model.IdempotentRequest;
+import vn.fruit.anna.repository.IdempotentRequestRepository;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Replays the stored response of an order that was already placed with the same
+ * {@code Idempotency-Key}, so client retries never place it twice.
+ *
+ * Lookups go through an LRU of recent keys before the table. Duplicates arriving while the first
+ * request is still running wait for its result instead of running again. Across instances the
+ * primary key of the table decides: the order that inserts the key second rolls back and the
+ * stored response is returned instead.
+ */
+@Service
+@Slf4j
+public class IdempotencyService {
+
+    public static final String HEADER = "Idempotency-Key";
+
+    private static final int MAX_KEY_LENGTH = 128;
+
+    private final IdempotentRequestRepository idempotentRequestRepository;
+    private final ObjectMapper objectMapper;
+    private final long ttlMs;
+
+    private final Map<String, CachedResponse> recent;
+    private final Map<String, RunningRequest> inFlight = new ConcurrentHashMap<>();
+
+    public IdempotencyService(IdempotentRequestRepository idempotentRequestRepository,
+                              ObjectMapper objectMapper,
+                              @Value("${order.idempotency.ttl-ms}") long ttlMs,
+                              @Value("${order.idempotency.cache-size}") int cacheSize) {
+        this.idempotentRequestRepository = idempotentRequestRepository;
+        this.objectMapper = objectMapper;
+        this.ttlMs = ttlMs;
+        this.recent = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedResponse> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the response stored for the key, or runs {@code placement} when the key is new.
+     * {@code placement} must call {@link #store} inside the transaction that does the work.
+     */
+    public OrderResponse execute(String key, Object request, Supplier<OrderResponse> placement) {
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            throw new InvalidDataException(HEADER + " must be 1 to " + MAX_KEY_LENGTH + " characters");
+        }
+
+        String fingerprint = fingerprint(request);
+        OrderResponse cached = cached(key, fingerprint);
+        if (cached != null) {
+            return cached;
+        }
+
+        RunningRequest running = new RunningRequest(fingerprint, new CompletableFuture<>());
+        RunningRequest first = inFlight.putIfAbsent(key, running);
+        if (first != null) {
+            checkFingerprint(first.fingerprint(), fingerprint);
+            return await(first.response());
+        }
+
+        try {
+            OrderResponse response = stored(key, fingerprint);
+            if (response == null) {
+                try {
+                    response = placement.get();
+                } catch (DataIntegrityViolationException e) {
+                    // Another instance committed the same key first
+                    response = stored(key, fingerprint);
+                    if (response == null) {
+                        throw e;
+                    }
+                }
+                remember(key, fingerprint, response, System.currentTimeMillis() + ttlMs);
+            }
+            running.response().complete(response);
+            return response;
+        } catch (RuntimeException e) {
+            running.response().completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, running);
+        }
+    }
+
+    /**
+     * Takes the key for the response; fails on commit, or earlier, if another request took it.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void store(String key, Object request, OrderResponse response) {
+        Date now = new Date();
+        idempotentRequestRepository.deleteExpired(key, now);
+        idempotentRequestRepository.insert(key, fingerprint(request), toJson(response), new Date(now.getTime() + ttlMs));
+    }
+
+    @Scheduled(fixedDelayString = "${order.idempotency.purge-interval-ms}")
+    @Transactional
+    public void purgeExpired() {
+        int purged = idempotentRequestRepository.deleteAllExpired(new Date());
+        if (purged > 0) {
+            log.debug("Purged {} expired idempotency keys", purged);
+        }
+    }
+
+    private synchronized OrderResponse cached(String key, String fingerprint) {
+        CachedResponse cached = recent.get(key);
+        if (cached == null) {
+            return null;
+        }
+        if (cached.expiresAt() <= System.currentTimeMillis()) {
+            recent.remove(key);
+            return null;
+        }
+        checkFingerprint(cached.fingerprint(), fingerprint);
+        return cached.response();
+    }
+
+    private synchronized void remember(String key, String fingerprint, OrderResponse response, long expiresAt) {
+        recent.put(key, new CachedResponse(fingerprint, response, expiresAt));
+    }
+
+    private OrderResponse stored(String key, String fingerprint) {
+        IdempotentRequest stored = idempotentRequestRepository
+                .findByIdempotencyKeyAndExpiresAtAfter(key, new Date())
+                .orElse(null);
+        if (stored == null) {
+            return null;
+        }
+
+        checkFingerprint(stored.getFingerprint(), fingerprint);
+        try {
+            OrderResponse response = objectMapper.readValue(stored.getResponse(), OrderResponse.class);
+            remember(key, fingerprint, response, stored.getExpiresAt().getTime());
+            return response;
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Stored response of idempotency key " + key + " is unreadable", e);
+        }
+    }
+
+    private static void checkFingerprint(String expected, String actual) {
+        if (!expected.equals(actual)) {
+            throw new DataInUseException(HEADER + " was already used for a different request");
+        }
+    }
+
+    private String fingerprint(Object request) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(objectMapper.writeValueAsBytes(request)));
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private String toJson(OrderResponse response) {
+        try {
+            return objectMapper.writeValueAsString(response);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static OrderResponse await(CompletableFuture<OrderResponse> response) {
+        try {
+            return response.get();
+        } catch (InterruptedException e) {
+            // The request was fine; the server gave up on it, usually while shutting down
+            Thread.currentThread().interrupt();
+            throw new ServiceUnavailableException("Interrupted while waiting for a duplicate request");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new ServiceUnavailableException("Duplicate request failed", e.getCause());
+        }
+    }
+
+    private record CachedResponse(String fingerprint, OrderResponse response, long expiresAt) {
+    }
+
+    private record RunningRequest(String fingerprint, CompletableFuture<OrderResponse> response) {
+    }
+}
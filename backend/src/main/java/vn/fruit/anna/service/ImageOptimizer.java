@@ -0,0 +1,314 @@
+package vn.fruit.anna.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Turns an uploaded photo into bounded-size JPEG variants.
+ *
+ * The source is decoded once, subsampled while decoding when it is much larger than the biggest
+ * variant, rotated according to its EXIF orientation and then scaled down step by step into the
+ * detail, card and thumbnail sizes. Variants are written without any metadata, so camera and GPS
+ * data never reach the CDN. A BlurHash placeholder is computed from the thumbnail in the same pass.
+ * Work runs on a small fixed pool because decoding is memory heavy.
+ */
+@Component
+@Slf4j
+public class ImageOptimizer {
+
+    // Enough for a recognisable blur; larger sources only cost time
+    private static final int PLACEHOLDER_SIZE = 32;
+    private static final int PLACEHOLDER_COMPONENTS_X = 4;
+    private static final int PLACEHOLDER_COMPONENTS_Y = 3;
+
+    private final ExecutorService workers;
+    private final int detailSize;
+    private final int cardSize;
+    private final int thumbnailSize;
+    private final float quality;
+
+    public ImageOptimizer(@Value("${media.optimize.workers}") int workers,
+                          @Value("${media.optimize.detail-size}") int detailSize,
+                          @Value("${media.optimize.card-size}") int cardSize,
+                          @Value("${media.optimize.thumbnail-size}") int thumbnailSize,
+                          @Value("${media.optimize.quality}") float quality) {
+        this.workers = Executors.newFixedThreadPool(workers, Thread.ofPlatform().name("image-optimizer-", 0).factory());
+        this.detailSize = detailSize;
+        this.cardSize = cardSize;
+        this.thumbnailSize = thumbnailSize;
+        this.quality = quality;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    /**
+     * Variant files written to temp storage; closing deletes them.
+     */
+    public record Variants(Path detail, Path card, Path thumbnail, String placeholder) implements AutoCloseable {
+        @Override
+        public void close() throws IOException {
+            Files.deleteIfExists(detail);
+            Files.deleteIfExists(card);
+            Files.deleteIfExists(thumbnail);
+        }
+    }
+
+    /**
+     * Builds the variants of the image, or returns null when it cannot be decoded.
+     */
+    public Variants optimize(Path source) throws IOException {
+        return await(workers.submit(() -> resize(source)));
+    }
+
+    /**
+     * Starts computing the placeholder of an image that is uploaded unchanged. The source must
+     * stay in place until the result has been read; the result is null when it cannot be decoded.
+     */
+    public Future<String> placeholderAsync(Path source) {
+        return workers.submit(() -> {
+            BufferedImage decoded = decode(source);
+            return decoded == null ? null : placeholder(orient(decoded, readExifOrientation(source)));
+        });
+    }
+
+    public static <T> T await(Future<T> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while optimizing an image");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException("Error optimizing image", e.getCause());
+        }
+    }
+
+    private Variants resize(Path source) throws IOException {
+        BufferedImage decoded = decode(source);
+        if (decoded == null) {
+            return null;
+        }
+
+        BufferedImage detail = scaleDown(orient(decoded, readExifOrientation(source)), detailSize);
+        BufferedImage card = scaleDown(detail, cardSize);
+        BufferedImage thumbnail = scaleDown(card, thumbnailSize);
+        String placeholder = placeholder(thumbnail);
+
+        Path detailFile = Files.createTempFile("anna-detail-", ".jpg");
+        Path cardFile = Files.createTempFile("anna-card-", ".jpg");
+        Path thumbnailFile = Files.createTempFile("anna-thumbnail-", ".jpg");
+        Variants variants = new Variants(detailFile, cardFile, thumbnailFile, placeholder);
+        try {
+            writeJpeg(detail, detailFile);
+            writeJpeg(card, cardFile);
+            writeJpeg(thumbnail, thumbnailFile);
+            return variants;
+        } catch (IOException | RuntimeException e) {
+            variants.close();
+            throw e;
+        }
+    }
+
+    private static String placeholder(BufferedImage image) {
+        return Blurhash.encode(scaleDown(image, PLACEHOLDER_SIZE), PLACEHOLDER_COMPONENTS_X, PLACEHOLDER_COMPONENTS_Y);
+    }
+
+    private BufferedImage decode(Path source) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(source.toFile())) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+
+                // Decode at most ~2x the detail size; the rest of the pixels would be thrown away anyway
+                int longestSide = Math.max(reader.getWidth(0), reader.getHeight(0));
+                int subsampling = Math.max(1, longestSide / (detailSize * 2));
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return toRgb(reader.read(0, param));
+            } catch (IOException | RuntimeException e) {
+                // CMYK JPEGs, truncated files and the like: the original is uploaded without variants
+                log.info("Could not decode image {}, keeping the original: {}", source.getFileName(), e.toString());
+                return null;
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // JPEG has no alpha channel, so transparent areas become white
+    private static BufferedImage toRgb(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_INT_RGB) {
+            return image;
+        }
+
+        BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = rgb.createGraphics();
+        try {
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+            graphics.drawImage(image, 0, 0, null);
+        } finally {
+            graphics.dispose();
+        }
+        return rgb;
+    }
+
+    // Halving steps keep bilinear downscaling sharp without the cost of an area-averaging filter
+    private static BufferedImage scaleDown(BufferedImage image, int maxSize) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        double scale = Math.min(1.0, (double) maxSize / Math.max(width, height));
+        int targetWidth = Math.max(1, (int) Math.round(width * scale));
+        int targetHeight = Math.max(1, (int) Math.round(height * scale));
+
+        BufferedImage current = image;
+        while (width != targetWidth || height != targetHeight) {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+            current = draw(current, width, height, null);
+        }
+        return current;
+    }
+
+    private static BufferedImage orient(BufferedImage image, int orientation) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+
+        AffineTransform transform = new AffineTransform();
+        switch (orientation) {
+            case 3 -> transform.rotate(Math.PI, width / 2.0, height / 2.0);
+            case 6 -> {
+                transform.translate(height, 0);
+                transform.rotate(Math.PI / 2);
+            }
+            case 8 -> {
+                transform.translate(0, width);
+                transform.rotate(-Math.PI / 2);
+            }
+            default -> {
+                // Mirrored orientations are rare on phone photos and are left as taken
+                return image;
+            }
+        }
+
+        boolean swapsSides = orientation == 6 || orientation == 8;
+        return draw(image, swapsSides ? height : width, swapsSides ? width : height, transform);
+    }
+
+    private static BufferedImage draw(BufferedImage source, int width, int height, AffineTransform transform) {
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            if (transform != null) {
+                graphics.drawImage(source, transform, null);
+            } else {
+                graphics.drawImage(source, 0, 0, width, height, null);
+            }
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+
+    // Writing through ImageWriter without IIOMetadata leaves out EXIF, XMP and ICC segments
+    private void writeJpeg(BufferedImage image, Path target) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(target.toFile())) {
+            writer.setOutput(output);
+
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    /**
+     * Reads the EXIF orientation tag of a JPEG, 1 (as stored) when absent or unreadable.
+     */
+    private static int readExifOrientation(Path source) {
+        try (InputStream stream = Files.newInputStream(source)) {
+            DataInputStream input = new DataInputStream(stream);
+            if (input.readUnsignedShort() != 0xFFD8) {
+                return 1;
+            }
+
+            while (true) {
+                int marker = input.readUnsignedShort();
+                int length = input.readUnsignedShort() - 2;
+                // Start of scan: no EXIF segment before the image data
+                if (marker == 0xFFDA || (marker & 0xFF00) != 0xFF00) {
+                    return 1;
+                }
+
+                byte[] segment = new byte[length];
+                input.readFully(segment);
+                if (marker == 0xFFE1 && length > 14 && new String(segment, 0, 4).equals("Exif")) {
+                    return orientationFromTiff(ByteBuffer.wrap(segment, 6, length - 6).slice());
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            return 1;
+        }
+    }
+
+    private static int orientationFromTiff(ByteBuffer tiff) {
+        tiff.order(tiff.getShort(0) == 0x4949 ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+        int ifdOffset = tiff.getInt(4);
+        int entries = tiff.getShort(ifdOffset) & 0xFFFF;
+
+        for (int i = 0; i < entries; i++) {
+            int entry = ifdOffset + 2 + i * 12;
+            if ((tiff.getShort(entry) & 0xFFFF) == 0x0112) {
+                return tiff.getShort(entry + 8) & 0xFFFF;
+            }
+        }
+        return 1;
+    }
+}
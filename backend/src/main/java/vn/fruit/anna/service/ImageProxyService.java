@@ -0,0 +1,361 @@
+package vn.fruit.anna.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import vn.fruit.anna.exception.InvalidDataException;
+import vn.fruit.anna.exception.ResourceNotFoundException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Stream;
+
+/**
+ * Same-origin proxy for remote images, backed by a size-bounded LRU cache on disk.
+ *
+ * The first request for an image fetches it from its origin; concurrent requests for the same
+ * cold image wait for that single fetch. Cached files are named after the hash of their URL, so
+ * the cache survives restarts and the hash doubles as a strong ETag. Only hosts listed in
+ * {@code media.proxy.allowed-hosts} can be proxied, and only raster image types are kept.
+ *
+ * Evicted files leave the index at once but stay on disk for {@code media.proxy.eviction-grace-ms}:
+ * a request may have looked a file up without opening it yet, and with sendfile Tomcat only opens
+ * it by name after the handler returns. Once opened, a file can be deleted under the reader.
+ */
+@Service
+@Slf4j
+public class ImageProxyService {
+
+    private static final Map<String, String> EXTENSIONS = Map.of(
+            "image/jpeg", ".jpg",
+            "image/png", ".png",
+            "image/gif", ".gif",
+            "image/webp", ".webp",
+            "image/avif", ".avif"
+    );
+
+    private final boolean enabled;
+    private final String baseUrl;
+    private final Set<String> allowedHosts;
+    private final Path cacheDir;
+    private final long maxCacheBytes;
+    private final long maxImageBytes;
+    private final Duration fetchTimeout;
+    private final long evictionGraceMs;
+    private final HttpClient httpClient;
+
+    // URL hash -> cached file, in access order; guarded by this
+    private final LinkedHashMap<String, CachedImage> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedBytes = 0;
+
+    // Evicted files waiting out the grace period, oldest first; guarded by this
+    private final Deque<EvictedImage> evicted = new ArrayDeque<>();
+
+    private final Map<String, CompletableFuture<CachedImage>> inFlight = new ConcurrentHashMap<>();
+
+    public ImageProxyService(@Value("${media.proxy.enabled}") boolean enabled,
+                             @Value("${media.proxy.base-url}") String baseUrl,
+                             @Value("${media.proxy.allowed-hosts}") Set<String> allowedHosts,
+                             @Value("${media.proxy.cache-dir}") String cacheDir,
+                             @Value("${media.proxy.max-cache-bytes}") long maxCacheBytes,
+                             @Value("${media.proxy.max-image-bytes}") long maxImageBytes,
+                             @Value("${media.proxy.fetch-timeout-ms}") long fetchTimeoutMs,
+                             @Value("${media.proxy.eviction-grace-ms}") long evictionGraceMs) {
+        this.enabled = enabled;
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl : baseUrl + "/";
+        this.allowedHosts = allowedHosts;
+        this.cacheDir = Path.of(cacheDir).toAbsolutePath().normalize();
+        this.maxCacheBytes = maxCacheBytes;
+        this.maxImageBytes = maxImageBytes;
+        this.fetchTimeout = Duration.ofMillis(fetchTimeoutMs);
+        this.evictionGraceMs = evictionGraceMs;
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(fetchTimeout)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .build();
+    }
+
+    public record CachedImage(Path file, long size, String etag, String contentType) {
+    }
+
+    private record EvictedImage(String name, CachedImage image, long deleteAfter) {
+    }
+
+    @PostConstruct
+    public void loadCache() throws IOException {
+        if (!enabled) {
+            return;
+        }
+
+        Files.createDirectories(cacheDir);
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(cacheDir)) {
+            files = listing.filter(Files::isRegularFile).toList();
+        }
+
+        // Oldest first, so the most recently written files end up as the most recently used
+        List<CachedImage> cached = new ArrayList<>();
+        for (Path file : files) {
+            String fileName = file.getFileName().toString();
+            int dot = fileName.lastIndexOf('.');
+            String contentType = dot < 0 ? null : contentTypeOf(fileName.substring(dot));
+            if (contentType == null) {
+                // Partial downloads left by a crash
+                Files.deleteIfExists(file);
+                continue;
+            }
+            cached.add(new CachedImage(file, Files.size(file), "\"" + fileName.substring(0, dot) + "\"", contentType));
+        }
+        cached.sort(Comparator.comparingLong(image -> lastModified(image.file())));
+
+        synchronized (this) {
+            cached.forEach(this::put);
+        }
+        log.info("Image proxy cache loaded with {} files, {} bytes", entries.size(), cachedBytes);
+    }
+
+    /**
+     * The proxied URL for an image, or the URL unchanged when the proxy is off or the host is not allowed.
+     */
+    public String proxyUrl(String url) {
+        if (!enabled || url == null || !isAllowed(url)) {
+            return url;
+        }
+        return baseUrl + Base64.getUrlEncoder().withoutPadding().encodeToString(url.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns the cached copy of the image behind a proxy token, fetching it on a miss.
+     */
+    public CachedImage get(String token) throws IOException {
+        if (!enabled) {
+            throw new ResourceNotFoundException("Image proxy is disabled");
+        }
+
+        String url;
+        try {
+            url = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidDataException("Invalid image token");
+        }
+        if (!isAllowed(url)) {
+            throw new InvalidDataException("Image host is not allowed");
+        }
+
+        String name = sha256(url);
+        CachedImage cached = lookup(name);
+        if (cached != null) {
+            return cached;
+        }
+
+        CompletableFuture<CachedImage> fetch = new CompletableFuture<>();
+        CompletableFuture<CachedImage> running = inFlight.putIfAbsent(name, fetch);
+        if (running != null) {
+            return await(running);
+        }
+
+        try {
+            // Another fetch may have finished between the lookup and registering ours
+            cached = lookup(name);
+            if (cached == null) {
+                cached = fetch(url, name);
+            }
+            fetch.complete(cached);
+            return cached;
+        } catch (IOException | RuntimeException e) {
+            fetch.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(name, fetch);
+        }
+    }
+
+    private synchronized CachedImage lookup(String name) {
+        CachedImage cached = entries.get(name);
+        if (cached != null && !Files.exists(cached.file())) {
+            entries.remove(name);
+            cachedBytes -= cached.size();
+            return null;
+        }
+        return cached;
+    }
+
+    private CachedImage fetch(String url, String name) throws IOException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(fetchTimeout)
+                .GET()
+                .build();
+
+        HttpResponse<InputStream> response;
+        try {
+            response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while fetching " + url);
+        }
+
+        try (InputStream body = response.body()) {
+            if (response.statusCode() == 404) {
+                throw new ResourceNotFoundException("Image not found at origin");
+            }
+            if (response.statusCode() != 200) {
+                throw new IOException("Origin returned " + response.statusCode() + " for " + url);
+            }
+
+            String contentType = response.headers().firstValue(HttpHeaders.CONTENT_TYPE)
+                    .map(value -> value.split(";")[0].trim().toLowerCase(Locale.ROOT))
+                    .orElse("");
+            String extension = EXTENSIONS.get(contentType);
+            if (extension == null) {
+                throw new InvalidDataException("Origin did not return a supported image type");
+            }
+
+            Path partial = Files.createTempFile(cacheDir, name, ".part");
+            try {
+                long size = copyBounded(body, partial);
+                Path file = cacheDir.resolve(name + extension);
+                CachedImage cached = new CachedImage(file, size, "\"" + name + "\"", contentType);
+
+                // Under the lock, so a pending deletion of an earlier copy cannot remove the new file
+                synchronized (this) {
+                    Files.move(partial, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                    put(cached);
+                }
+                return cached;
+            } finally {
+                Files.deleteIfExists(partial);
+            }
+        }
+    }
+
+    private long copyBounded(InputStream input, Path target) throws IOException {
+        long size = 0;
+        byte[] buffer = new byte[64 * 1024];
+        try (OutputStream output = Files.newOutputStream(target)) {
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                size += read;
+                if (size > maxImageBytes) {
+                    throw new InvalidDataException("Image is larger than " + maxImageBytes + " bytes");
+                }
+                output.write(buffer, 0, read);
+            }
+        }
+        return size;
+    }
+
+    // Caller holds the lock
+    private void put(CachedImage image) {
+        String name = image.etag().substring(1, image.etag().length() - 1);
+        CachedImage previous = entries.put(name, image);
+        if (previous != null) {
+            cachedBytes -= previous.size();
+        }
+        cachedBytes += image.size();
+
+        long deleteAfter = System.currentTimeMillis() + evictionGraceMs;
+        Iterator<Map.Entry<String, CachedImage>> eldest = entries.entrySet().iterator();
+        while (cachedBytes > maxCacheBytes && eldest.hasNext()) {
+            Map.Entry<String, CachedImage> entry = eldest.next();
+            if (entry.getValue() == image) {
+                break;
+            }
+            eldest.remove();
+            cachedBytes -= entry.getValue().size();
+            evicted.addLast(new EvictedImage(entry.getKey(), entry.getValue(), deleteAfter));
+        }
+    }
+
+    /**
+     * Deletes evicted files whose grace period is over, unless the image was fetched again since.
+     */
+    @Scheduled(fixedDelayString = "${media.proxy.eviction-grace-ms}")
+    public synchronized void deleteEvicted() {
+        long now = System.currentTimeMillis();
+        while (!evicted.isEmpty() && evicted.peekFirst().deleteAfter() <= now) {
+            EvictedImage eviction = evicted.removeFirst();
+            CachedImage current = entries.get(eviction.name());
+            if (current != null && current.file().equals(eviction.image().file())) {
+                continue;
+            }
+
+            try {
+                Files.deleteIfExists(eviction.image().file());
+            } catch (IOException e) {
+                log.warn("Could not delete evicted proxy file {}: {}", eviction.image().file(), e.getMessage());
+            }
+        }
+    }
+
+    private boolean isAllowed(String url) {
+        try {
+            URI uri = URI.create(url);
+            return ("https".equals(uri.getScheme()) || "http".equals(uri.getScheme()))
+                    && uri.getHost() != null
+                    && allowedHosts.contains(uri.getHost().toLowerCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static CachedImage await(CompletableFuture<CachedImage> fetch) throws IOException {
+        try {
+            return fetch.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for an image fetch");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IOException("Error fetching image", e.getCause());
+        }
+    }
+
+    private static String contentTypeOf(String extension) {
+        return EXTENSIONS.entrySet().stream()
+                .filter(entry -> entry.getValue().equals(extension))
+                .map(Map.Entry::getKey)
+                .findFirst()
+                .orElse(null);
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static String sha256(String value) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package vn.fruit.anna.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Where uploaded images are kept. Selected with {@code media.store}.
+ */
+public interface ImageStore {
+
+    /**
+     * Stores the file and returns its public URL.
+     */
+    String store(File file) throws IOException;
+
+    /**
+     * The storage key of a URL served by this store, or null when the URL belongs elsewhere.
+     *
+     * @throws IllegalArgumentException when the URL looks like ours but cannot be parsed
+     */
+    String keyOf(String url);
+
+    /**
+     * Deletes the stored images and returns the keys that are gone, including those that did not exist.
+     */
+    Set<String> delete(Collection<String> keys) throws IOException;
+
+    /**
+     * A URL of the image resized on the fly to at most the given width, or null when the store
+     * can only serve the files it was given.
+     */
+    default String resizedUrl(String url, int width) {
+        return null;
+    }
+}
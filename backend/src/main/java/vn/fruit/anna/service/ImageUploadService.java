@@ -0,0 +1,314 @@
+package vn.fruit.anna.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+import vn.fruit.anna.enums.MediaProfile;
+import vn.fruit.anna.model.ImageVariants;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Uploads images to the {@link ImageStore} in parallel on virtual threads.
+ *
+ * Concurrency is capped per call and across the whole application, so one large request cannot
+ * monopolise the store's connection pool. Results keep the order of the given files, and when
+ * any upload fails the ones that already succeeded are queued for deletion.
+ *
+ * Files are hashed while they are staged to disk; content that was uploaded before is served from
+ * the media registry instead of being uploaded again, and holds a reference on the stored asset.
+ *
+ * Uploads must happen before the request touches the database: with open-in-view the first query
+ * pins a JDBC connection until the response is written, so the upload would hold it too.
+ * {@link #saveUploaded} then runs the short transaction that stores the URLs.
+ */
+@Service
+public class ImageUploadService {
+
+    private final ImageStore imageStore;
+    private final ImageOptimizer imageOptimizer;
+    private final AssetDeletionService assetDeletionService;
+    private final MediaAssetService mediaAssetService;
+    private final TransactionTemplate transactionTemplate;
+    private final Semaphore globalPermits;
+    private final int maxPerRequest;
+
+    // Compare with hikaricp.connections.usage to check that uploads no longer hold connections
+    private final Timer uploadTimer;
+    private final MeterRegistry meterRegistry;
+    private final Counter deduplicatedCounter;
+
+    public ImageUploadService(ImageStore imageStore,
+                              ImageOptimizer imageOptimizer,
+                              AssetDeletionService assetDeletionService,
+                              MediaAssetService mediaAssetService,
+                              TransactionTemplate transactionTemplate,
+                              MeterRegistry meterRegistry,
+                              @Value("${media.upload.max-concurrent}") int maxConcurrent,
+                              @Value("${media.upload.max-per-request}") int maxPerRequest) {
+        this.imageStore = imageStore;
+        this.imageOptimizer = imageOptimizer;
+        this.assetDeletionService = assetDeletionService;
+        this.mediaAssetService = mediaAssetService;
+        this.transactionTemplate = transactionTemplate;
+        this.globalPermits = new Semaphore(maxConcurrent, true);
+        this.maxPerRequest = maxPerRequest;
+        this.uploadTimer = Timer.builder("media.upload")
+                .register(meterRegistry);
+        this.meterRegistry = meterRegistry;
+        this.deduplicatedCounter = Counter.builder("media.upload.deduplicated")
+                .register(meterRegistry);
+    }
+
+    /**
+     * An uploaded image: the main URL plus its smaller variants and placeholder (null when the
+     * image could not be decoded).
+     */
+    public record UploadedImage(String url, ImageVariants variants) {
+        public List<String> urls() {
+            List<String> urls = new ArrayList<>();
+            urls.add(url);
+            if (variants != null) {
+                urls.addAll(variants.urls());
+            }
+            return urls;
+        }
+    }
+
+    public UploadedImage upload(MultipartFile file) throws IOException {
+        return uploadAll(List.of(file)).get(0);
+    }
+
+    /**
+     * Uploads all files unchanged, with a placeholder each, and returns them in the same order.
+     */
+    public List<UploadedImage> uploadAll(List<MultipartFile> files) throws IOException {
+        return fanOut(files, file -> uploadDeduplicated(file, MediaProfile.ORIGINAL, this::uploadOriginal));
+    }
+
+    /**
+     * Optimizes each file into detail, card and thumbnail variants and uploads them, keeping the
+     * order of the files. Formats the optimizer cannot decode are uploaded unchanged.
+     */
+    public List<UploadedImage> uploadAllOptimized(List<MultipartFile> files) throws IOException {
+        return fanOut(files, file -> uploadDeduplicated(file, MediaProfile.OPTIMIZED, this::uploadOptimized));
+    }
+
+    private UploadedImage uploadDeduplicated(MultipartFile file,
+                                             MediaProfile profile,
+                                             StagedUpload upload) throws IOException {
+        Path source = Files.createTempFile("anna-source-", ".tmp");
+        try {
+            String digest = stage(file, source);
+
+            Optional<UploadedImage> existing = mediaAssetService.acquire(digest, profile);
+            if (existing.isPresent()) {
+                deduplicatedCounter.increment();
+                return existing.get();
+            }
+
+            UploadedImage uploaded = upload.upload(source);
+            try {
+                mediaAssetService.register(digest, profile, uploaded);
+                return uploaded;
+            } catch (DataIntegrityViolationException e) {
+                // The same content was uploaded concurrently; keep that copy and drop ours
+                assetDeletionService.enqueue(uploaded.urls());
+                return mediaAssetService.acquire(digest, profile).orElseThrow(() -> e);
+            } catch (RuntimeException e) {
+                assetDeletionService.enqueue(uploaded.urls());
+                throw e;
+            }
+        } finally {
+            Files.deleteIfExists(source);
+        }
+    }
+
+    // Copies the part to disk and computes its SHA-256 in the same pass
+    private static String stage(MultipartFile file, Path target) throws IOException {
+        MessageDigest sha256;
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        try (InputStream input = new DigestInputStream(file.getInputStream(), sha256)) {
+            Files.copy(input, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return HexFormat.of().formatHex(sha256.digest());
+    }
+
+    // The placeholder is computed on the optimizer pool while the file uploads, so it adds no latency
+    private UploadedImage uploadOriginal(Path source) throws IOException {
+        Future<String> placeholder = imageOptimizer.placeholderAsync(source);
+        String url;
+        try {
+            url = uploadFile(source);
+        } catch (IOException | RuntimeException e) {
+            placeholder.cancel(true);
+            throw e;
+        }
+
+        try {
+            return new UploadedImage(url, ImageVariants.of(null, null, ImageOptimizer.await(placeholder)));
+        } catch (IOException e) {
+            // A missing placeholder only means the client shows an empty box
+            return new UploadedImage(url, null);
+        }
+    }
+
+    private UploadedImage uploadOptimized(Path source) throws IOException {
+        try (ImageOptimizer.Variants variants = imageOptimizer.optimize(source)) {
+            if (variants == null) {
+                return new UploadedImage(uploadFile(source), null);
+            }
+
+            List<String> uploaded = new ArrayList<>(3);
+            try {
+                uploaded.add(uploadFile(variants.detail()));
+                uploaded.add(uploadFile(variants.card()));
+                uploaded.add(uploadFile(variants.thumbnail()));
+            } catch (IOException | RuntimeException e) {
+                assetDeletionService.enqueue(uploaded);
+                throw e;
+            }
+            return new UploadedImage(uploaded.get(0), ImageVariants.of(uploaded.get(2), uploaded.get(1), variants.placeholder()));
+        }
+    }
+
+    private String uploadFile(Path file) throws IOException {
+        acquireGlobalPermit();
+        Timer.Sample sample = Timer.start();
+        try {
+            return imageStore.store(file.toFile());
+        } finally {
+            sample.stop(uploadTimer);
+            globalPermits.release();
+        }
+    }
+
+    private void acquireGlobalPermit() throws IOException {
+        try {
+            globalPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to upload an image");
+        }
+    }
+
+    private interface UploadTask {
+        UploadedImage upload(MultipartFile file) throws IOException;
+    }
+
+    private interface StagedUpload {
+        UploadedImage upload(Path source) throws IOException;
+    }
+
+    // Even a single file goes through a virtual thread: the media registry lookup would otherwise
+    // pin the request's open-in-view connection for the whole upload
+    private List<UploadedImage> fanOut(List<MultipartFile> files, UploadTask task) throws IOException {
+        if (files.isEmpty()) {
+            return List.of();
+        }
+
+        Semaphore requestPermits = new Semaphore(maxPerRequest);
+        AtomicBoolean aborted = new AtomicBoolean(false);
+        List<Future<UploadedImage>> futures = new ArrayList<>(files.size());
+
+        // Closing the executor waits for every task, so no upload can finish after the cleanup below
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (MultipartFile file : files) {
+                futures.add(executor.submit(() -> {
+                    requestPermits.acquire();
+                    try {
+                        // Files still queued when another upload failed are skipped
+                        if (aborted.get()) {
+                            return null;
+                        }
+                        return task.upload(file);
+                    } catch (IOException | RuntimeException e) {
+                        aborted.set(true);
+                        throw e;
+                    } finally {
+                        requestPermits.release();
+                    }
+                }));
+            }
+        }
+
+        List<UploadedImage> results = new ArrayList<>(files.size());
+        Throwable failure = null;
+        for (Future<UploadedImage> future : futures) {
+            if (future.state() == Future.State.SUCCESS) {
+                results.add(future.resultNow());
+            } else if (failure == null) {
+                failure = future.exceptionNow();
+            }
+        }
+
+        if (failure == null) {
+            return results;
+        }
+
+        assetDeletionService.enqueue(results.stream()
+                .filter(Objects::nonNull)
+                .flatMap(result -> result.urls().stream())
+                .toList());
+        if (failure instanceof IOException ioException) {
+            throw ioException;
+        }
+        throw new IOException("Error uploading images", failure);
+    }
+
+    /**
+     * Stores already uploaded images in a short transaction.
+     *
+     * The write gets a list to collect the URLs it replaces; they are queued for deletion in the
+     * same transaction. If the write fails, the uploaded images are queued for deletion instead.
+     * The transaction is timed per endpoint, since it is all the connection an upload request holds.
+     */
+    public <T> T saveUploaded(String endpoint, Collection<String> uploadedUrls, Function<List<String>, T> write) {
+        Timer.Sample sample = Timer.start();
+        try {
+            return transactionTemplate.execute(status -> {
+                List<String> replacedUrls = new ArrayList<>();
+                T result = write.apply(replacedUrls);
+                assetDeletionService.enqueue(replacedUrls);
+                return result;
+            });
+        } catch (RuntimeException e) {
+            assetDeletionService.enqueue(uploadedUrls);
+            throw e;
+        } finally {
+            sample.stop(Timer.builder("media.upload.connection-hold")
+                    .tag("endpoint", endpoint)
+                    .register(meterRegistry));
+        }
+    }
+}
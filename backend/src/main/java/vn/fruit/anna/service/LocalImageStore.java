@@ -0,0 +1,117 @@
+package vn.fruit.anna.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Keeps images on the local disk and serves them through {@code /api/media}.
+ *
+ * Keys are random, so a stored file never changes and can be cached forever. Files are spread
+ * over 256 directories by the first two characters of their key.
+ */
+@Service
+@ConditionalOnProperty(name = "media.store", havingValue = "local")
+public class LocalImageStore implements ImageStore {
+
+    private final Path root;
+    private final String baseUrl;
+
+    public LocalImageStore(@Value("${media.local.root}") String root,
+                           @Value("${media.local.base-url}") String baseUrl) throws IOException {
+        this.root = Path.of(root).toAbsolutePath().normalize();
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl : baseUrl + "/";
+        Files.createDirectories(this.root);
+    }
+
+    @Override
+    public String store(File file) throws IOException {
+        String id = UUID.randomUUID().toString().replace("-", "");
+        String key = id.substring(0, 2) + "/" + id + extensionOf(file.toPath());
+        Path target = root.resolve(key);
+        Files.createDirectories(target.getParent());
+
+        // Readers never see a partially written file
+        Path partial = Files.createTempFile(target.getParent(), ".upload-", ".tmp");
+        try {
+            Files.copy(file.toPath(), partial, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(partial, target, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(partial);
+        }
+        return baseUrl + key;
+    }
+
+    @Override
+    public String keyOf(String url) {
+        if (!url.startsWith(baseUrl)) {
+            return null;
+        }
+        if (resolve(url.substring(baseUrl.length())) == null) {
+            throw new IllegalArgumentException("Invalid media key in " + url);
+        }
+        return url.substring(baseUrl.length());
+    }
+
+    @Override
+    public Set<String> delete(Collection<String> keys) throws IOException {
+        Set<String> deleted = new HashSet<>();
+        for (String key : keys) {
+            Path file = resolve(key);
+            if (file != null) {
+                Files.deleteIfExists(file);
+                deleted.add(key);
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * The file for a key, or null when the key points outside the media directory.
+     */
+    public Path resolve(String key) {
+        if (key == null || key.isEmpty()) {
+            return null;
+        }
+
+        Path file = root.resolve(key).normalize();
+        return file.startsWith(root) && !file.equals(root) ? file : null;
+    }
+
+    // Served content types are derived from the extension, so it is taken from the file's magic bytes
+    private static String extensionOf(Path file) throws IOException {
+        byte[] header = new byte[12];
+        int read;
+        try (InputStream input = Files.newInputStream(file)) {
+            read = input.readNBytes(header, 0, header.length);
+        }
+
+        if (read >= 3 && (header[0] & 0xFF) == 0xFF && (header[1] & 0xFF) == 0xD8 && (header[2] & 0xFF) == 0xFF) {
+            return ".jpg";
+        }
+        if (read >= 8 && (header[0] & 0xFF) == 0x89 && header[1] == 'P' && header[2] == 'N' && header[3] == 'G') {
+            return ".png";
+        }
+        if (read >= 6 && new String(header, 0, 4, StandardCharsets.US_ASCII).equals("GIF8")) {
+            return ".gif";
+        }
+        if (read >= 12 && new String(header, 0, 4, StandardCharsets.US_ASCII).equals("RIFF")
+                && new String(Arrays.copyOfRange(header, 8, 12), StandardCharsets.US_ASCII).equals("WEBP")) {
+            return ".webp";
+        }
+        return ".bin";
+    }
+}
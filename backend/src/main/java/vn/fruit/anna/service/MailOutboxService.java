@@ -0,0 +1,170 @@
+package vn.fruit.anna.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import vn.fruit.anna.dto.response.OrderResponse;
+import vn.fruit.anna.enums.MailOutboxStatus;
+import vn.fruit.anna.model.MailOutbox;
+import vn.fruit.anna.repository.MailOutboxRepository;
+
+import java.io.UnsupportedEncodingException;
+import java.util.*;
+
+/**
+ * Durable queue of order confirmation mails.
+ *
+ * Orders enqueue a snapshot of themselves inside their own transaction, so a rolled back order is
+ * never mailed and a slow or unreachable mail server never delays or fails an order. A background
+ * dispatcher claims due entries, renders them from the snapshot and sends each batch over a single
+ * SMTP connection. Failures are retried with exponential backoff; entries that keep failing, or
+ * that cannot be rendered at all, are moved to the dead letter state for manual inspection.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class MailOutboxService {
+
+    private final MailOutboxRepository mailOutboxRepository;
+    private final MailService mailService;
+    private final JavaMailSender mailSender;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${mail.outbox.batch-size}")
+    private int batchSize;
+
+    // Longer than sending a batch can take; a claim left by a crashed instance is retried after it
+    @Value("${mail.outbox.lease-ms}")
+    private long leaseMs;
+
+    @Value("${mail.outbox.max-attempts}")
+    private int maxAttempts;
+
+    @Value("${mail.outbox.retry-delay-ms}")
+    private long retryDelayMs;
+
+    @Value("${mail.outbox.max-retry-delay-ms}")
+    private long maxRetryDelayMs;
+
+    @Transactional
+    public void enqueueOrderConfirmation(OrderResponse order) {
+        if (order.getCustomerEmail() == null || order.getCustomerEmail().isBlank()) {
+            return;
+        }
+
+        String payload;
+        try {
+            payload = objectMapper.writeValueAsString(order);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+
+        mailOutboxRepository.save(MailOutbox.builder()
+                .recipient(order.getCustomerEmail())
+                .payload(payload)
+                .status(MailOutboxStatus.PENDING)
+                .nextAttemptAt(new Date())
+                .build());
+    }
+
+    @Scheduled(fixedDelayString = "${mail.outbox.poll-interval-ms}")
+    public void dispatch() {
+        List<MailOutbox> batch;
+        do {
+            batch = claim();
+            if (!batch.isEmpty()) {
+                send(batch);
+            }
+        } while (batch.size() == batchSize);
+    }
+
+    // Moves the next attempt past the lease, so other polls leave the entries alone while they are sent
+    private List<MailOutbox> claim() {
+        return transactionTemplate.execute(status -> {
+            List<MailOutbox> due = mailOutboxRepository.findByStatusAndNextAttemptAtLessThanEqualOrderByIdAsc(
+                    MailOutboxStatus.PENDING, new Date(), PageRequest.of(0, batchSize));
+            Date leaseEnd = new Date(System.currentTimeMillis() + leaseMs);
+            due.forEach(entry -> entry.setNextAttemptAt(leaseEnd));
+            return mailOutboxRepository.saveAll(due);
+        });
+    }
+
+    private void send(List<MailOutbox> batch) {
+        List<MailOutbox> sent = new ArrayList<>();
+        List<MailOutbox> failed = new ArrayList<>();
+        Map<MimeMessage, MailOutbox> messages = new LinkedHashMap<>();
+
+        for (MailOutbox entry : batch) {
+            try {
+                OrderResponse order = objectMapper.readValue(entry.getPayload(), OrderResponse.class);
+                messages.put(mailService.createOrderConfirmMail(order), entry);
+            } catch (JsonProcessingException | MessagingException | UnsupportedEncodingException | RuntimeException e) {
+                // Rendering does not depend on the mail server, so a retry would fail the same way
+                deadLetter(entry, "Cannot render mail: " + e.getMessage(), failed);
+            }
+        }
+
+        if (!messages.isEmpty()) {
+            try {
+                mailSender.send(messages.keySet().toArray(MimeMessage[]::new));
+                sent.addAll(messages.values());
+            } catch (MailSendException e) {
+                // Messages that are not among the failures were delivered
+                Map<Object, Exception> failures = e.getFailedMessages();
+                messages.forEach((message, entry) -> {
+                    Exception failure = failures.isEmpty() ? e : failures.get(message);
+                    if (failure == null) {
+                        sent.add(entry);
+                    } else {
+                        fail(entry, failure.getMessage(), failed);
+                    }
+                });
+                log.warn("Sending {} of {} mails failed: {}", failed.size(), messages.size(), e.getMessage());
+            } catch (MailException e) {
+                log.warn("Sending {} mails failed: {}", messages.size(), e.getMessage());
+                messages.values().forEach(entry -> fail(entry, e.getMessage(), failed));
+            }
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            mailOutboxRepository.deleteAllInBatch(sent);
+            mailOutboxRepository.saveAll(failed);
+        });
+    }
+
+    private void fail(MailOutbox entry, String error, List<MailOutbox> failed) {
+        int attempts = entry.getAttempts() + 1;
+        entry.setAttempts(attempts);
+        entry.setLastError(error);
+
+        if (attempts >= maxAttempts) {
+            deadLetter(entry, error, failed);
+            return;
+        }
+
+        long delay = Math.min(retryDelayMs << Math.min(attempts - 1, 30), maxRetryDelayMs);
+        entry.setNextAttemptAt(new Date(System.currentTimeMillis() + delay));
+        failed.add(entry);
+    }
+
+    private void deadLetter(MailOutbox entry, String error, List<MailOutbox> failed) {
+        entry.setStatus(MailOutboxStatus.DEAD_LETTER);
+        entry.setLastError(error);
+        log.error("Moved mail {} to {} to the dead letters after {} attempts: {}",
+                entry.getId(), entry.getRecipient(), entry.getAttempts(), error);
+        failed.add(entry);
+    }
+}
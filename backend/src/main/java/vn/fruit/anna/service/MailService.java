@@ -8,8 +8,8 @@ import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
-import vn.fruit.anna.model.Order;
-import vn.fruit.anna.model.OrderItem;
+import vn.fruit.anna.dto.response.OrderItemResponse;
+import vn.fruit.anna.dto.response.OrderResponse;
 
 import java.io.File;
 import java.io.UnsupportedEncodingException;
@@ -58,8 +58,10 @@ public class MailService {
         return CompletableFuture.completedFuture(null);
     }
 
-    @Async
-    public CompletableFuture<Void> sendOrderConfirmMail(Order order)
+    /**
+     * Builds the confirmation mail from the order snapshot; sending is left to the mail outbox.
+     */
+    public MimeMessage createOrderConfirmMail(OrderResponse order)
             throws MessagingException, UnsupportedEncodingException {
         // Tạo một đối tượng MimeMessage
         MimeMessage mimeMessage = mailSender.createMimeMessage();
@@ -68,8 +70,8 @@ public class MailService {
         MimeMessageHelper helper = new MimeMessageHelper(mimeMessage);
 
         // Thiết lập người nhận và tiêu đề
-        helper.setTo(order.getCustomer().getEmail());
-        helper.setSubject("Xác nhận đơn hàng - Chi tiết đơn hàng của bạn");
+        helper.setTo(order.getCustomerEmail());
+        helper.setSubject(EMAIL_SUBJECT);
 
         // Nội dung email với tên khách hàng và chi tiết đơn hàng theo định dạng HTML
         String htmlBody = generateOrderDetailsHtmlBody(order);
@@ -77,17 +79,10 @@ public class MailService {
         helper.setText(htmlBody, true); // true để chỉ ra nội dung HTML
         helper.setFrom(emailFrom, EMAIL_FROM_NAME);
 
-//        // Nếu có tệp đính kèm (ví dụ: hóa đơn đơn hàng), thêm tệp vào email
-//        if (attachment != null && attachment.exists()) {
-//            helper.addAttachment(attachment.getName(), attachment);
-//        }
-
-        mailSender.send(mimeMessage);
-
-        return CompletableFuture.completedFuture(null);
+        return mimeMessage;
     }
 
-    private String generateOrderDetailsHtmlBody(Order order) {
+    private String generateOrderDetailsHtmlBody(OrderResponse order) {
         StringBuilder html = new StringBuilder();
 
         html.append("<!DOCTYPE html>")
@@ -156,7 +151,7 @@ public class MailService {
         // Items
         html.append("<h2 class='items-title'>Sản phẩm đã đặt</h2>");
 
-        for (OrderItem item : order.getOrderItems()) {
+        for (OrderItemResponse item : order.getItems()) {
             html.append("<div class='item'>")
                     .append("<div class='item-name'>").append(item.getProductName()).append("</div>")
                     .append("<div class='item-quantity'>").append(item.getQuantity()).append(" x</div>")
@@ -0,0 +1,76 @@
+package vn.fruit.anna.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import vn.fruit.anna.enums.MediaProfile;
+import vn.fruit.anna.model.MediaAsset;
+import vn.fruit.anna.repository.MediaAssetRepository;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Reference-counted registry of uploaded images, keyed by content digest.
+ *
+ * Every upload that resolves to an asset holds one reference, and every URL queued for deletion
+ * gives one back. The files are only deleted once the count drops to zero.
+ */
+@Service
+@RequiredArgsConstructor
+public class MediaAssetService {
+
+    private final MediaAssetRepository mediaAssetRepository;
+
+    /**
+     * Takes a reference on the asset with the given content, if it was uploaded before.
+     */
+    @Transactional
+    public Optional<ImageUploadService.UploadedImage> acquire(String digest, MediaProfile profile) {
+        return mediaAssetRepository.findByDigestAndProfile(digest, profile)
+                // The row may have been released and deleted since it was read
+                .filter(asset -> mediaAssetRepository.incrementRefCount(asset.getId()) > 0)
+                .map(asset -> new ImageUploadService.UploadedImage(asset.getUrl(), asset.getVariants()));
+    }
+
+    /**
+     * Records a fresh upload holding one reference.
+     *
+     * @throws org.springframework.dao.DataIntegrityViolationException when the same content was
+     *         registered concurrently
+     */
+    @Transactional
+    public void register(String digest, MediaProfile profile, ImageUploadService.UploadedImage image) {
+        mediaAssetRepository.saveAndFlush(MediaAsset.builder()
+                .digest(digest)
+                .profile(profile)
+                .url(image.url())
+                .variants(image.variants())
+                .refCount(1)
+                .build());
+    }
+
+    /**
+     * Gives back one reference to the image at the URL and returns the URLs that are no longer
+     * used and can be deleted from storage. Must run inside a transaction.
+     */
+    public List<String> release(String url) {
+        Optional<MediaAsset> asset = mediaAssetRepository.findByUrl(url);
+        if (asset.isPresent()) {
+            MediaAsset media = asset.get();
+            mediaAssetRepository.decrementRefCount(media.getId());
+            if (mediaAssetRepository.deleteIfUnreferenced(media.getId()) == 0) {
+                return List.of();
+            }
+            return new ImageUploadService.UploadedImage(media.getUrl(), media.getVariants()).urls();
+        }
+
+        // Variants are released together with their detail image
+        if (mediaAssetRepository.existsByVariantUrl(url)) {
+            return List.of();
+        }
+
+        // Not registered: only delete it when no row points at it anymore
+        return mediaAssetRepository.countRowsReferencing(url) > 0 ? List.of() : List.of(url);
+    }
+}
@@ -1,7 +1,11 @@
 package vn.fruit.anna.service;
 
-import jakarta.mail.MessagingException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.PessimisticLockingFailureException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -9,14 +13,18 @@ import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import vn.fruit.anna.dto.filter.OrderFilter;
 import vn.fruit.anna.dto.request.CreateOrderRequest;
 import vn.fruit.anna.dto.request.ListOrdersByIdsRequest;
 import vn.fruit.anna.dto.request.OrderItemRequest;
+import vn.fruit.anna.dto.response.CursorSliceResponse;
 import vn.fruit.anna.dto.response.OrderItemResponse;
 import vn.fruit.anna.dto.response.OrderResponse;
 import vn.fruit.anna.enums.OrderStatus;
+import vn.fruit.anna.exception.InvalidDataException;
 import vn.fruit.anna.exception.ResourceNotFoundException;
+import vn.fruit.anna.exception.ServiceUnavailableException;
 import vn.fruit.anna.model.Customer;
 import vn.fruit.anna.model.Order;
 import vn.fruit.anna.model.OrderItem;
@@ -24,15 +32,21 @@ import vn.fruit.anna.model.Product;
 import vn.fruit.anna.repository.CustomerRepository;
 import vn.fruit.anna.repository.OrderRepository;
 import vn.fruit.anna.repository.ProductRepository;
+import vn.fruit.anna.repository.specification.KeysetSpecification;
 import vn.fruit.anna.repository.specification.OrderSpecification;
+import vn.fruit.anna.service.GroupCommitter.Submission;
 
-import java.io.UnsupportedEncodingException;
-import java.util.List;
-import java.util.UUID;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
+@Slf4j
 public class OrderService {
 
     private final OrderRepository orderRepository;
@@ -40,10 +54,109 @@ public class OrderService {
     private final CustomerService customerService;
     private final ProductRepository productRepository;
     private final ProductService productService;
-    private final MailService mailService;
+    private final StockReservationService stockReservationService;
+    private final IdempotencyService idempotencyService;
+    private final MailOutboxService mailOutboxService;
+    private final TransactionTemplate transactionTemplate;
 
-    @Transactional
-    public OrderResponse createOrder(CreateOrderRequest request) throws MessagingException, UnsupportedEncodingException {
+    @Value("${order.max-items}")
+    private int maxOrderItems;
+
+    @Value("${order.deadlock-retries}")
+    private int deadlockRetries;
+
+    @Value("${order.deadlock-backoff-ms}")
+    private long deadlockBackoffMs;
+
+    @Value("${order.group-commit.enabled}")
+    private boolean groupCommitEnabled;
+
+    @Value("${order.group-commit.queue-capacity}")
+    private int groupCommitQueueCapacity;
+
+    @Value("${order.group-commit.max-batch}")
+    private int groupCommitMaxBatch;
+
+    @Value("${order.group-commit.max-wait-ms}")
+    private long groupCommitMaxWaitMs;
+
+    private GroupCommitter<PendingOrder, Order> groupCommitter;
+
+    private record PendingOrder(CreateOrderRequest request, String idempotencyKey) {
+    }
+
+    @PostConstruct
+    public void startGroupCommit() {
+        if (groupCommitEnabled) {
+            groupCommitter = new GroupCommitter<>("order-group-commit", groupCommitQueueCapacity, groupCommitMaxBatch,
+                    TimeUnit.MILLISECONDS.toNanos(groupCommitMaxWaitMs), this::writeBatch);
+        }
+    }
+
+    @PreDestroy
+    public void stopGroupCommit() throws InterruptedException {
+        if (groupCommitter != null) {
+            groupCommitter.close();
+        }
+    }
+
+    public OrderResponse createOrder(CreateOrderRequest request) {
+        return createOrder(request, null);
+    }
+
+    /**
+     * Places the order once per idempotency key; retries with the same key get the first response.
+     */
+    public OrderResponse createOrder(CreateOrderRequest request, String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return toResponse(placeOrder(request, null));
+        }
+        return idempotencyService.execute(idempotencyKey, request, () -> toResponse(placeOrder(request, idempotencyKey)));
+    }
+
+    // With group commit, orders are written in shared transactions; a full queue falls back to a transaction of its own
+    private Order placeOrder(CreateOrderRequest request, String idempotencyKey) {
+        if (groupCommitter != null) {
+            validateOrderItems(request.getOrderItemRequests());
+            CompletableFuture<Order> queued = groupCommitter.offer(new PendingOrder(request, idempotencyKey));
+            if (queued != null) {
+                return await(queued);
+            }
+        }
+        return placeOrderNow(request, idempotencyKey);
+    }
+
+    // A deadlock rolls back everything the order wrote, so the whole transaction is retried
+    private Order placeOrderNow(CreateOrderRequest request, String idempotencyKey) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> {
+                    Order order = insertOrder(request);
+                    if (idempotencyKey != null) {
+                        idempotencyService.store(idempotencyKey, request, toResponse(order));
+                    }
+                    return order;
+                });
+            } catch (PessimisticLockingFailureException e) {
+                if (attempt > deadlockRetries) {
+                    throw e;
+                }
+                log.warn("Order transaction lost a lock conflict, retrying (attempt {}): {}", attempt, e.getMessage());
+                backOff(attempt, e);
+            }
+        }
+    }
+
+    private void backOff(int attempt, PessimisticLockingFailureException cause) {
+        try {
+            Thread.sleep(deadlockBackoffMs * attempt + ThreadLocalRandom.current().nextLong(deadlockBackoffMs + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw cause;
+        }
+    }
+
+    private Order insertOrder(CreateOrderRequest request) {
         Customer customer = customerRepository.findOneByNameContainingIgnoreCase(request.getCustomerName())
                 .orElseGet(() -> customerService.createNewCustomer(request));
 
@@ -64,13 +177,160 @@ public class OrderService {
         orderRepository.save(order);
         orderRepository.flush();
 
-        productService.updateStockBulk(orderItems);
+        // Hot products are reserved in memory, the rest is decremented in the database
+        productService.updateStockBulk(stockReservationService.reserve(orderItems));
 
         customerService.updateCustomerOrderStats(customer, order);
 
-        mailService.sendOrderConfirmMail(order);
+        // Sent from the outbox once the order has committed
+        mailOutboxService.enqueueOrderConfirmation(toResponse(order));
 
-        return toResponse(order);
+        return order;
+    }
+
+    private void writeBatch(List<Submission<PendingOrder, Order>> batch) {
+        Map<Submission<PendingOrder, Order>, RuntimeException> rejected = new HashMap<>();
+        Map<Submission<PendingOrder, Order>, Order> placed;
+        try {
+            placed = transactionTemplate.execute(status -> insertOrders(batch, rejected));
+        } catch (RuntimeException e) {
+            // Rejections may have been caused by the rolled back orders, so every order is retried on its own
+            log.warn("Order batch of {} failed, placing the orders one by one: {}", batch.size(), e.getMessage());
+            for (Submission<PendingOrder, Order> submission : batch) {
+                try {
+                    PendingOrder pending = submission.request();
+                    submission.result().complete(placeOrderNow(pending.request(), pending.idempotencyKey()));
+                } catch (RuntimeException orderError) {
+                    submission.result().completeExceptionally(orderError);
+                }
+            }
+            return;
+        }
+
+        placed.forEach((submission, order) -> submission.result().complete(order));
+        rejected.forEach((submission, error) -> submission.result().completeExceptionally(error));
+    }
+
+    /**
+     * Inserts the orders of a batch with one product query, one stock update and one flush.
+     * Orders that fail validation or lack stock are put in {@code rejected} and left out.
+     */
+    private Map<Submission<PendingOrder, Order>, Order> insertOrders(List<Submission<PendingOrder, Order>> batch,
+                                                                    Map<Submission<PendingOrder, Order>, RuntimeException> rejected) {
+        Map<Submission<PendingOrder, Order>, Set<UUID>> productIdsByOrder = new LinkedHashMap<>();
+        for (Submission<PendingOrder, Order> submission : batch) {
+            try {
+                productIdsByOrder.put(submission, validateOrderItems(submission.request().request().getOrderItemRequests()));
+            } catch (RuntimeException e) {
+                rejected.put(submission, e);
+            }
+        }
+
+        Set<UUID> productIds = new HashSet<>();
+        productIdsByOrder.values().forEach(productIds::addAll);
+        Map<UUID, Product> productsById = productRepository.findAllById(productIds).stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity()));
+        Map<UUID, Integer> remainingStock = lockStocks(productIds);
+
+        Map<Submission<PendingOrder, Order>, Order> placed = new LinkedHashMap<>();
+        List<OrderItem> databaseItems = new ArrayList<>();
+        for (Submission<PendingOrder, Order> submission : productIdsByOrder.keySet()) {
+            CreateOrderRequest request = submission.request().request();
+            Order order = Order.builder()
+                    .status(OrderStatus.NEW)
+                    .estimatedDeliveryDate(request.getEstimatedDeliveryDate())
+                    .build();
+            try {
+                List<OrderItem> orderItems = buildOrderItems(request.getOrderItemRequests(), order, productsById);
+                order.setOrderItems(orderItems);
+                order.setTotalPrice(orderItems.stream().mapToDouble(OrderItem::getPrice).sum());
+
+                Map<UUID, Integer> allocated = allocateStock(orderItems, remainingStock);
+                try {
+                    databaseItems.addAll(stockReservationService.reserve(orderItems));
+                } catch (RuntimeException e) {
+                    allocated.forEach((productId, quantity) -> remainingStock.merge(productId, quantity, Integer::sum));
+                    throw e;
+                }
+            } catch (RuntimeException e) {
+                rejected.put(submission, e);
+                continue;
+            }
+
+            // Only for accepted orders, so a rejected one never leaves a new customer behind in the batch.
+            // Its stock is already taken, so a failure here must roll the whole batch back.
+            order.setCustomer(customerRepository.findOneByNameContainingIgnoreCase(request.getCustomerName())
+                    .orElseGet(() -> customerService.createNewCustomer(request)));
+            placed.put(submission, order);
+        }
+
+        orderRepository.saveAll(placed.values());
+        orderRepository.flush();
+
+        // Rows are locked and checked above, so none of the conditional decrements can miss
+        productService.updateStockBulk(databaseItems);
+
+        placed.forEach((submission, order) -> {
+            customerService.updateCustomerOrderStats(order.getCustomer(), order);
+            mailOutboxService.enqueueOrderConfirmation(toResponse(order));
+            String idempotencyKey = submission.request().idempotencyKey();
+            if (idempotencyKey != null) {
+                idempotencyService.store(idempotencyKey, submission.request().request(), toResponse(order));
+            }
+        });
+        return placed;
+    }
+
+    // Stock of the products that are decremented in the database, with their rows locked for the batch
+    private Map<UUID, Integer> lockStocks(Set<UUID> productIds) {
+        List<String> databaseIds = productIds.stream()
+                .filter(productId -> !stockReservationService.isHot(productId))
+                .map(UUID::toString)
+                .toList();
+
+        Map<UUID, Integer> stocks = new HashMap<>();
+        if (!databaseIds.isEmpty()) {
+            for (Object[] row : productRepository.lockStocksByIds(databaseIds)) {
+                stocks.put(UUID.fromString((String) row[0]), row[1] != null ? ((Number) row[1]).intValue() : 0);
+            }
+        }
+        return stocks;
+    }
+
+    private Map<UUID, Integer> allocateStock(List<OrderItem> orderItems, Map<UUID, Integer> remainingStock) {
+        Map<UUID, Integer> demand = new HashMap<>();
+        Map<UUID, String> names = new HashMap<>();
+        for (OrderItem item : orderItems) {
+            if (!stockReservationService.isHot(item.getProductId())) {
+                demand.merge(item.getProductId(), item.getQuantity(), Integer::sum);
+                names.put(item.getProductId(), item.getProductName());
+            }
+        }
+
+        List<String> insufficient = demand.entrySet().stream()
+                .filter(entry -> remainingStock.getOrDefault(entry.getKey(), 0) < entry.getValue())
+                .map(entry -> names.get(entry.getKey()))
+                .toList();
+        if (!insufficient.isEmpty()) {
+            throw new IllegalArgumentException("Not enough stock for product: " + String.join(", ", insufficient));
+        }
+
+        demand.forEach((productId, quantity) -> remainingStock.merge(productId, -quantity, Integer::sum));
+        return demand;
+    }
+
+    private static Order await(CompletableFuture<Order> queued) {
+        try {
+            return queued.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceUnavailableException("Interrupted while waiting for the order to be saved");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new ServiceUnavailableException("Order could not be saved", e.getCause());
+        }
     }
 
     public OrderResponse getOrderById(UUID orderId) {
@@ -94,6 +354,25 @@ public class OrderService {
         return orderRepository.findAll(spec, pageable).map(this::toResponse);
     }
 
+    public CursorSliceResponse<OrderResponse> searchOrdersAfter(OrderFilter filter,
+                                                                String after,
+                                                                int size,
+                                                                String sortBy,
+                                                                String direction) {
+        Sort.Direction sortDirection = direction.equalsIgnoreCase("desc")
+                ? Sort.Direction.DESC
+                : Sort.Direction.ASC;
+
+        String sortField = switch (sortBy) {
+            case "createdAt" -> "createdAt";
+            case "totalPrice" -> "totalPrice";
+            default -> throw new InvalidDataException("Unsupported sort for cursor pagination: " + sortBy);
+        };
+
+        Specification<Order> spec = OrderSpecification.applyFilter(filter);
+        return KeysetSpecification.findSlice(orderRepository, spec, sortField, sortDirection, after, size, this::toResponse);
+    }
+
     @Transactional
     public OrderResponse updateStatus(UUID orderId, OrderStatus newStatus) {
         Order order = orderRepository.findById(orderId)
@@ -147,12 +426,51 @@ public class OrderService {
                 .build();
     }
 
+    // All products are loaded in one query, so the cost does not grow with the number of lines
     private List<OrderItem> processOrderItems(List<OrderItemRequest> itemRequests, Order order) {
+        Set<UUID> productIds = validateOrderItems(itemRequests);
+        Map<UUID, Product> productsById = productRepository.findAllById(productIds).stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity()));
+        return buildOrderItems(itemRequests, order, productsById);
+    }
+
+    // Returns the distinct product ids of the order
+    private Set<UUID> validateOrderItems(List<OrderItemRequest> itemRequests) {
+        if (itemRequests == null || itemRequests.isEmpty()) {
+            throw new InvalidDataException("Order has no items");
+        }
+        if (itemRequests.size() > maxOrderItems) {
+            throw new InvalidDataException("Order has more than " + maxOrderItems + " items");
+        }
+
+        Set<UUID> productIds = new LinkedHashSet<>();
+        for (OrderItemRequest itemRequest : itemRequests) {
+            if (itemRequest.getProductId() == null) {
+                throw new InvalidDataException("Order item has no product id");
+            }
+            if (itemRequest.getQuantity() == null || itemRequest.getQuantity() <= 0) {
+                throw new InvalidDataException("Invalid quantity for product: " + itemRequest.getProductId());
+            }
+            productIds.add(itemRequest.getProductId());
+        }
+        return productIds;
+    }
+
+    private List<OrderItem> buildOrderItems(List<OrderItemRequest> itemRequests, Order order, Map<UUID, Product> productsById) {
+        List<UUID> missingIds = itemRequests.stream()
+                .map(OrderItemRequest::getProductId)
+                .distinct()
+                .filter(id -> !productsById.containsKey(id))
+                .toList();
+        if (!missingIds.isEmpty()) {
+            throw new ResourceNotFoundException("Products not found with ids: " + missingIds.stream()
+                    .map(UUID::toString)
+                    .collect(Collectors.joining(", ")));
+        }
+
         return itemRequests.stream()
                 .map(itemRequest -> {
-                    Product product = productRepository.findById(itemRequest.getProductId())
-                            .orElseThrow(() -> new ResourceNotFoundException(
-                                    "Product not found with id: " + itemRequest.getProductId()));
+                    Product product = productsById.get(itemRequest.getProductId());
 
                     return OrderItem.builder()
                             .order(order)
@@ -169,10 +487,7 @@ public class OrderService {
     }
 
     private Double calculateItemPrice(Product product, Integer quantity) {
-        double unitPrice = product.getSellingPrice() *
-                (1 - (product.getDiscountPercentage() != null ?
-                        product.getDiscountPercentage() : 0) / 100);
-        return unitPrice * quantity;
+        return product.getEffectivePrice() * quantity;
     }
 
     private void updateCustomerOrderStats(Customer customer, Order order) {
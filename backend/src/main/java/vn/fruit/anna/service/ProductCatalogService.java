@@ -0,0 +1,223 @@
+package vn.fruit.anna.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import vn.fruit.anna.dto.response.ProductResponse;
+import vn.fruit.anna.event.ProductChangedEvent;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * In-process cache of every product as a {@link ProductResponse}.
+ *
+ * Storefront reads never touch the database once the catalog is loaded. Each change swaps new
+ * responses into the entries it touches; changes and rebuilds take the catalog's lock, so they
+ * apply one at a time. Listeners of different transactions run in no particular order, so every
+ * entry keeps the row version it was read at and an older change is dropped. Changes that arrive
+ * while a rebuild reads the database are replayed on top of what it loaded. The list of products
+ * with a thumbnail holds ids in catalog order and is only rebuilt when products are added,
+ * changed or deleted.
+ *
+ * Cached responses are shared between requests and must be treated as read-only.
+ */
+@Service
+@Slf4j
+public class ProductCatalogService {
+
+    private final ResponsiveImageService responsiveImageService;
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Timer rebuildTimer;
+
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+    private volatile boolean ready = false;
+
+    private final Object rebuildLock = new Object();
+    // Guarded by this
+    private final List<ProductChangedEvent> pendingChanges = new ArrayList<>();
+    private boolean rebuilding = false;
+
+    public ProductCatalogService(ResponsiveImageService responsiveImageService, MeterRegistry meterRegistry) {
+        this.responsiveImageService = responsiveImageService;
+        this.hitCounter = Counter.builder("product.catalog.reads")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder("product.catalog.reads")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        this.rebuildTimer = Timer.builder("product.catalog.rebuild")
+                .register(meterRegistry);
+        Gauge.builder("product.catalog.size", this, catalog -> catalog.snapshot.byId.size())
+                .register(meterRegistry);
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public Optional<ProductResponse> findById(UUID id) {
+        ProductResponse product = ready ? snapshot.byId.get(id) : null;
+        (product != null ? hitCounter : missCounter).increment();
+        return Optional.ofNullable(product);
+    }
+
+    /**
+     * Returns the cached products that have a thumbnail, or empty if the catalog is not loaded yet.
+     */
+    public Optional<List<ProductResponse>> findAllWithThumbnail() {
+        if (!ready) {
+            missCounter.increment();
+            return Optional.empty();
+        }
+        hitCounter.increment();
+
+        Snapshot current = snapshot;
+        List<ProductResponse> products = new ArrayList<>(current.withThumbnail.size());
+        for (UUID id : current.withThumbnail) {
+            ProductResponse product = current.byId.get(id);
+            if (product != null) {
+                products.add(product);
+            }
+        }
+        return Optional.of(products);
+    }
+
+    /**
+     * All cached products, for building other in-memory read models. Not counted as a read.
+     */
+    public Collection<ProductResponse> products() {
+        return Collections.unmodifiableCollection(snapshot.byId.values());
+    }
+
+    /**
+     * Looks up each id in the snapshot. Ids that are not cached are simply absent from the result,
+     * so the caller can load them from the database.
+     */
+    public Map<UUID, ProductResponse> findAllByIds(Collection<UUID> ids) {
+        Map<UUID, ProductResponse> found = new LinkedHashMap<>();
+        if (ready) {
+            Map<UUID, ProductResponse> byId = snapshot.byId;
+            for (UUID id : ids) {
+                ProductResponse product = byId.get(id);
+                if (product != null) {
+                    found.put(id, product);
+                }
+            }
+        }
+        hitCounter.increment(found.size());
+        missCounter.increment(ids.size() - found.size());
+        return found;
+    }
+
+    public void rebuild(Supplier<List<ProductResponse>> loader) {
+        synchronized (rebuildLock) {
+            long startedAt = System.nanoTime();
+            synchronized (this) {
+                rebuilding = true;
+            }
+
+            Map<UUID, ProductResponse> byId = new ConcurrentHashMap<>();
+            List<UUID> order = new ArrayList<>();
+            try {
+                for (ProductResponse product : loader.get()) {
+                    byId.put(product.getId(), responsiveImageService.apply(product));
+                    order.add(product.getId());
+                }
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    rebuilding = false;
+                    if (ready) {
+                        // Already applied to the current snapshot
+                        pendingChanges.clear();
+                    }
+                }
+                throw e;
+            }
+
+            synchronized (this) {
+                // Versions drop the changes the loader already saw
+                for (ProductChangedEvent event : pendingChanges) {
+                    apply(byId, order, event);
+                }
+                pendingChanges.clear();
+                rebuilding = false;
+                snapshot = new Snapshot(byId, order, withThumbnail(byId, order));
+                ready = true;
+            }
+
+            long elapsed = System.nanoTime() - startedAt;
+            rebuildTimer.record(elapsed, TimeUnit.NANOSECONDS);
+            log.info("Product catalog rebuilt with {} products in {} ms", byId.size(), elapsed / 1_000_000);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onProductChanged(ProductChangedEvent event) {
+        if (!ready || rebuilding) {
+            pendingChanges.add(event);
+            if (!ready) {
+                return;
+            }
+        }
+
+        Snapshot current = snapshot;
+        if (event.getUpserted().isEmpty() && event.getDeletedIds().isEmpty()) {
+            // Order commits only land here and leave the product lists alone
+            applyStock(current.byId, event.getStockChanges());
+            return;
+        }
+
+        List<UUID> order = new ArrayList<>(current.order);
+        apply(current.byId, order, event);
+        snapshot = new Snapshot(current.byId, order, withThumbnail(current.byId, order));
+    }
+
+    private void apply(Map<UUID, ProductResponse> byId, List<UUID> order, ProductChangedEvent event) {
+        // Srcsets are derived once here, so every later read reuses them
+        for (ProductResponse product : event.getUpserted()) {
+            ProductResponse upserted = responsiveImageService.apply(product);
+            ProductResponse cached = byId.get(product.getId());
+            if (cached == null) {
+                order.add(product.getId());
+            } else if (cached.getVersion() > product.getVersion()) {
+                // A later stock change already landed
+                upserted = upserted.toBuilder().stock(cached.getStock()).version(cached.getVersion()).build();
+            }
+            byId.put(product.getId(), upserted);
+        }
+
+        if (!event.getDeletedIds().isEmpty()) {
+            Set<UUID> deletedIds = new HashSet<>(event.getDeletedIds());
+            deletedIds.forEach(byId::remove);
+            order.removeIf(deletedIds::contains);
+        }
+
+        applyStock(byId, event.getStockChanges());
+    }
+
+    private static void applyStock(Map<UUID, ProductResponse> byId, Map<UUID, ProductChangedEvent.StockLevel> stockChanges) {
+        // Equal versions are let through: hot products sell from memory without touching the row
+        stockChanges.forEach((id, level) -> byId.computeIfPresent(id, (key, cached) ->
+                level.version() < cached.getVersion()
+                        ? cached
+                        : cached.toBuilder().stock(level.stock()).version(level.version()).build()));
+    }
+
+    private static List<UUID> withThumbnail(Map<UUID, ProductResponse> byId, List<UUID> order) {
+        return order.stream()
+                .filter(id -> byId.get(id) != null && byId.get(id).getThumbnailImage() != null)
+                .toList();
+    }
+
+    private record Snapshot(Map<UUID, ProductResponse> byId, List<UUID> order, List<UUID> withThumbnail) {
+        private static final Snapshot EMPTY = new Snapshot(new ConcurrentHashMap<>(), List.of(), List.of());
+    }
+}
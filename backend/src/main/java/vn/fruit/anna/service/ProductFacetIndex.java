@@ -0,0 +1,266 @@
+package vn.fruit.anna.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import vn.fruit.anna.dto.filter.ProductFilter;
+import vn.fruit.anna.dto.response.ProductFacetsResponse;
+import vn.fruit.anna.dto.response.ProductResponse;
+import vn.fruit.anna.event.ProductChangedEvent;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Per-attribute bitmap indexes used to count search facets without a SQL GROUP BY.
+ *
+ * Every product gets a dense ordinal, and each category, origin, unit and discounted-price bucket
+ * keeps a bitmap of the ordinals that have it. A facet count is the cardinality of the value's
+ * bitmap intersected with the bitmap of the current filter, where the filter of the facet's own
+ * dimension is left out so the other values of that dimension stay selectable.
+ */
+@Component
+public class ProductFacetIndex {
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final double[] priceBucketBounds;
+
+    private final Map<UUID, Integer> ordinals = new HashMap<>();
+    private final List<Entry> entries = new ArrayList<>();
+    private final BitSet live = new BitSet();
+
+    private final Map<String, BitSet> byCategory = new TreeMap<>();
+    private final Map<String, BitSet> byOrigin = new TreeMap<>();
+    private final Map<String, BitSet> byUnit = new TreeMap<>();
+    private final BitSet[] byPriceBucket;
+
+    private volatile boolean ready = false;
+
+    public ProductFacetIndex(@Value("${product.facets.price-buckets}") double[] priceBucketBounds) {
+        this.priceBucketBounds = priceBucketBounds.clone();
+        Arrays.sort(this.priceBucketBounds);
+        this.byPriceBucket = new BitSet[this.priceBucketBounds.length + 1];
+        for (int i = 0; i < byPriceBucket.length; i++) {
+            byPriceBucket[i] = new BitSet();
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public void rebuild(Collection<ProductResponse> products) {
+        lock.writeLock().lock();
+        try {
+            ordinals.clear();
+            entries.clear();
+            live.clear();
+            byCategory.clear();
+            byOrigin.clear();
+            byUnit.clear();
+            for (BitSet bucket : byPriceBucket) {
+                bucket.clear();
+            }
+
+            products.forEach(this::add);
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Counts facets for the given filter.
+     *
+     * @param nameMatches ids matched by the text search, or null when the filter has no name
+     */
+    public ProductFacetsResponse count(ProductFilter filter, Collection<UUID> nameMatches) {
+        lock.readLock().lock();
+        try {
+            BitSet text = (BitSet) live.clone();
+            if (nameMatches != null) {
+                text.and(toBitmap(nameMatches));
+            }
+
+            BitSet category = select(byCategory, filter.getCategoryName());
+            BitSet origin = select(byOrigin, filter.getOrigin());
+            BitSet price = selectPriceRange(filter.getMinPrice(), filter.getMaxPrice());
+
+            return ProductFacetsResponse.builder()
+                    .categories(countValues(byCategory, and(text, origin, price)))
+                    .origins(countValues(byOrigin, and(text, category, price)))
+                    .units(countValues(byUnit, and(text, category, origin, price)))
+                    .priceBuckets(countPriceBuckets(and(text, category, origin)))
+                    .build();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        if (event.getUpserted().isEmpty() && event.getDeletedIds().isEmpty()) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            event.getUpserted().forEach(this::add);
+            event.getDeletedIds().forEach(this::remove);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void add(ProductResponse product) {
+        remove(product.getId());
+
+        int ordinal = ordinals.computeIfAbsent(product.getId(), id -> {
+            entries.add(null);
+            return entries.size() - 1;
+        });
+
+        Entry entry = new Entry(
+                product.getCategoryName(),
+                product.getOrigin(),
+                product.getUnit() != null ? product.getUnit().name() : null,
+                product.getEffectivePrice()
+        );
+        entries.set(ordinal, entry);
+        live.set(ordinal);
+
+        setBit(byCategory, entry.category, ordinal);
+        setBit(byOrigin, entry.origin, ordinal);
+        setBit(byUnit, entry.unit, ordinal);
+        if (entry.effectivePrice != null) {
+            byPriceBucket[bucketOf(entry.effectivePrice)].set(ordinal);
+        }
+    }
+
+    private void remove(UUID productId) {
+        Integer ordinal = ordinals.get(productId);
+        if (ordinal == null || !live.get(ordinal)) {
+            return;
+        }
+
+        // The ordinal is kept for the id, so a re-added product reuses its slot
+        Entry entry = entries.get(ordinal);
+        live.clear(ordinal);
+        clearBit(byCategory, entry.category, ordinal);
+        clearBit(byOrigin, entry.origin, ordinal);
+        clearBit(byUnit, entry.unit, ordinal);
+        if (entry.effectivePrice != null) {
+            byPriceBucket[bucketOf(entry.effectivePrice)].clear(ordinal);
+        }
+    }
+
+    private BitSet toBitmap(Collection<UUID> productIds) {
+        BitSet bitmap = new BitSet();
+        for (UUID id : productIds) {
+            Integer ordinal = ordinals.get(id);
+            if (ordinal != null) {
+                bitmap.set(ordinal);
+            }
+        }
+        return bitmap;
+    }
+
+    // Matches the case-insensitive equality used by ProductSpecification; null means "no filter"
+    private BitSet select(Map<String, BitSet> index, String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+
+        BitSet selected = new BitSet();
+        index.forEach((key, bitmap) -> {
+            if (key.equalsIgnoreCase(value)) {
+                selected.or(bitmap);
+            }
+        });
+        return selected;
+    }
+
+    // Same semantics as ProductSpecification: both bounds apply to the discounted (effective) price
+    private BitSet selectPriceRange(Double minPrice, Double maxPrice) {
+        if (minPrice == null && maxPrice == null) {
+            return null;
+        }
+
+        BitSet selected = new BitSet();
+        for (int ordinal = live.nextSetBit(0); ordinal >= 0; ordinal = live.nextSetBit(ordinal + 1)) {
+            Double price = entries.get(ordinal).effectivePrice;
+            boolean aboveMin = minPrice == null || (price != null && price >= minPrice);
+            boolean belowMax = maxPrice == null || (price != null && price <= maxPrice);
+            if (aboveMin && belowMax) {
+                selected.set(ordinal);
+            }
+        }
+        return selected;
+    }
+
+    private Map<String, Integer> countValues(Map<String, BitSet> index, BitSet filter) {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        index.forEach((value, bitmap) -> {
+            BitSet matches = (BitSet) bitmap.clone();
+            matches.and(filter);
+            counts.put(value, matches.cardinality());
+        });
+        return counts;
+    }
+
+    private List<ProductFacetsResponse.PriceBucket> countPriceBuckets(BitSet filter) {
+        List<ProductFacetsResponse.PriceBucket> buckets = new ArrayList<>();
+        for (int i = 0; i < byPriceBucket.length; i++) {
+            BitSet matches = (BitSet) byPriceBucket[i].clone();
+            matches.and(filter);
+
+            Double from = i == 0 ? 0.0 : priceBucketBounds[i - 1];
+            Double to = i == priceBucketBounds.length ? null : priceBucketBounds[i];
+            buckets.add(new ProductFacetsResponse.PriceBucket(from, to, matches.cardinality()));
+        }
+        return buckets;
+    }
+
+    private BitSet and(BitSet base, BitSet... filters) {
+        BitSet result = (BitSet) base.clone();
+        for (BitSet filter : filters) {
+            if (filter != null) {
+                result.and(filter);
+            }
+        }
+        return result;
+    }
+
+    private int bucketOf(double price) {
+        int bucket = 0;
+        while (bucket < priceBucketBounds.length && price >= priceBucketBounds[bucket]) {
+            bucket++;
+        }
+        return bucket;
+    }
+
+    private static void setBit(Map<String, BitSet> index, String value, int ordinal) {
+        if (value != null) {
+            index.computeIfAbsent(value, key -> new BitSet()).set(ordinal);
+        }
+    }
+
+    private static void clearBit(Map<String, BitSet> index, String value, int ordinal) {
+        if (value == null) {
+            return;
+        }
+
+        BitSet bitmap = index.get(value);
+        if (bitmap != null) {
+            bitmap.clear(ordinal);
+            if (bitmap.isEmpty()) {
+                index.remove(value);
+            }
+        }
+    }
+
+    private record Entry(String category, String origin, String unit, Double effectivePrice) {
+    }
+}
@@ -0,0 +1,214 @@
+package vn.fruit.anna.service;
+
+import com.fasterxml.jackson.core.exc.StreamReadException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import vn.fruit.anna.dto.request.CreateProductRequest;
+import vn.fruit.anna.dto.response.ProductImportResponse;
+import vn.fruit.anna.event.ProductChangedEvent;
+import vn.fruit.anna.model.Category;
+import vn.fruit.anna.model.Product;
+import vn.fruit.anna.repository.CategoryRepository;
+import vn.fruit.anna.repository.ProductRepository;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+
+/**
+ * Streams a CSV or NDJSON product catalog into the database.
+ *
+ * Rows are read one at a time, checked against preloaded categories and existing names, and
+ * inserted through a Hibernate stateless session in JDBC batches, each batch in its own transaction.
+ * A bad row is reported and skipped; it never aborts the rest of the file.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ProductImportService {
+
+    public static final MediaType TEXT_CSV = MediaType.parseMediaType("text/csv");
+
+    private static final CsvMapper CSV_MAPPER = CsvMapper.builder()
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .build();
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final ProductRepository productRepository;
+    private final CategoryRepository categoryRepository;
+    private final Validator validator;
+    private final ObjectMapper objectMapper;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${product.import.batch-size}")
+    private int batchSize;
+
+    @Value("${product.import.max-reported-errors}")
+    private int maxReportedErrors;
+
+    public ProductImportResponse importProducts(InputStream body, MediaType contentType) throws IOException {
+        Map<String, Category> categories = new HashMap<>();
+        categoryRepository.findAll().forEach(category ->
+                categories.put(category.getName().toLowerCase(Locale.ROOT), category));
+
+        Set<String> names = new HashSet<>(productRepository.findAllLowerCaseNames());
+
+        ImportResult result = new ImportResult();
+        List<Product> batch = new ArrayList<>(batchSize);
+        List<Long> batchRows = new ArrayList<>(batchSize);
+
+        try (MappingIterator<CreateProductRequest> rows = readerFor(contentType).readValues(body)) {
+            while (true) {
+                try {
+                    if (!rows.hasNextValue()) {
+                        break;
+                    }
+                } catch (StreamReadException e) {
+                    // The input itself is broken, so there is no next row to resync to
+                    result.reject(++result.totalRows, "Malformed input: " + e.getOriginalMessage());
+                    break;
+                }
+
+                long rowNumber = ++result.totalRows;
+
+                CreateProductRequest row;
+                try {
+                    row = rows.nextValue();
+                } catch (JsonMappingException e) {
+                    result.reject(rowNumber, e.getOriginalMessage());
+                    continue;
+                } catch (StreamReadException e) {
+                    result.reject(rowNumber, "Malformed input: " + e.getOriginalMessage());
+                    break;
+                }
+
+                String error = validate(row, categories, names);
+                if (error != null) {
+                    result.reject(rowNumber, error);
+                    continue;
+                }
+
+                names.add(row.getName().toLowerCase(Locale.ROOT));
+                batch.add(toProduct(row, categories.get(row.getCategoryName().toLowerCase(Locale.ROOT))));
+                batchRows.add(rowNumber);
+
+                if (batch.size() >= batchSize) {
+                    insertBatch(batch, batchRows, names, result);
+                }
+            }
+        }
+
+        insertBatch(batch, batchRows, names, result);
+
+        log.info("Imported {} of {} product rows, {} rejected", result.imported, result.totalRows, result.rejected);
+        return new ProductImportResponse(result.totalRows, result.imported, result.rejected, result.errors);
+    }
+
+    private ObjectReader readerFor(MediaType contentType) {
+        if (contentType != null && TEXT_CSV.includes(contentType)) {
+            return CSV_MAPPER.readerFor(CreateProductRequest.class).with(CsvSchema.emptySchema().withHeader());
+        }
+        if (contentType != null && MediaType.APPLICATION_NDJSON.includes(contentType)) {
+            return objectMapper.readerFor(CreateProductRequest.class);
+        }
+        throw new IllegalArgumentException("Unsupported import format, expected text/csv or application/x-ndjson");
+    }
+
+    private String validate(CreateProductRequest row, Map<String, Category> categories, Set<String> names) {
+        Set<ConstraintViolation<CreateProductRequest>> violations = validator.validate(row);
+        if (!violations.isEmpty()) {
+            return violations.iterator().next().getMessage();
+        }
+        if (names.contains(row.getName().toLowerCase(Locale.ROOT))) {
+            return "Product with this name already exists!";
+        }
+        if (!categories.containsKey(row.getCategoryName().toLowerCase(Locale.ROOT))) {
+            return "Category not found!";
+        }
+        return null;
+    }
+
+    private Product toProduct(CreateProductRequest row, Category category) {
+        Product product = Product.builder()
+                .name(row.getName())
+                .origin(row.getOrigin())
+                .description(row.getDescription())
+                .originalPrice(row.getOriginalPrice())
+                .sellingPrice(row.getSellingPrice())
+                .discountPercentage(row.getDiscountPercentage())
+                .unit(row.getUnit())
+                .stock(row.getStock())
+                .minUnitToOrder(row.getMinUnitToOrder())
+                .category(category)
+                .productImages(new ArrayList<>())
+                .build();
+
+        // Stateless sessions do not run entity callbacks
+        product.updateEffectivePrice();
+        return product;
+    }
+
+    private void insertBatch(List<Product> batch, List<Long> batchRows, Set<String> names, ImportResult result) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try (StatelessSession session = entityManagerFactory.unwrap(SessionFactory.class).openStatelessSession()) {
+            session.setJdbcBatchSize(batchSize);
+            Transaction transaction = session.beginTransaction();
+            try {
+                batch.forEach(session::insert);
+                transaction.commit();
+            } catch (RuntimeException e) {
+                if (transaction.isActive()) {
+                    transaction.rollback();
+                }
+                throw e;
+            }
+
+            result.imported += batch.size();
+            eventPublisher.publishEvent(ProductChangedEvent.upserted(
+                    batch.stream().map(ProductService::toResponse).toList()));
+        } catch (RuntimeException e) {
+            log.warn("Product import batch of {} rows failed", batch.size(), e);
+            for (int i = 0; i < batch.size(); i++) {
+                names.remove(batch.get(i).getName().toLowerCase(Locale.ROOT));
+                result.reject(batchRows.get(i), "Batch insert failed: " + e.getMessage());
+            }
+        } finally {
+            batch.clear();
+            batchRows.clear();
+        }
+    }
+
+    private class ImportResult {
+        private long totalRows;
+        private long imported;
+        private long rejected;
+        private final List<ProductImportResponse.RowError> errors = new ArrayList<>();
+
+        private void reject(long row, String message) {
+            rejected++;
+            if (errors.size() < maxReportedErrors) {
+                errors.add(new ProductImportResponse.RowError(row, message));
+            }
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package vn.fruit.anna.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import vn.fruit.anna.dto.response.ProductResponse;
+import vn.fruit.anna.event.ProductChangedEvent;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * In-process inverted index over product name, origin, description and category name.
+ *
+ * Text is folded to lowercase ASCII (Vietnamese tones and diacritics removed, "đ" becomes "d")
+ * so "xoai" matches "Xoài". Every query token must match a token of the product, either exactly
+ * or as a prefix, and results are ranked by a field-weighted TF-IDF score.
+ */
+@Component
+@Slf4j
+public class ProductSearchIndex {
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private static final float NAME_WEIGHT = 3f;
+    private static final float CATEGORY_WEIGHT = 2f;
+    private static final float ORIGIN_WEIGHT = 1.5f;
+    private static final float DESCRIPTION_WEIGHT = 1f;
+
+    // A prefix hit ranks below an exact token hit
+    private static final float PREFIX_PENALTY = 0.5f;
+    // A token that is a prefix of more terms than this is left to the database rather than ranked here
+    private static final int MAX_PREFIX_EXPANSIONS = 64;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // term -> (product id -> weighted term frequency)
+    private final NavigableMap<String, Map<UUID, Float>> postings = new TreeMap<>();
+    // product id -> its terms, so a product can be removed without scanning every posting list
+    private final Map<UUID, Set<String>> documentTerms = new HashMap<>();
+
+    private volatile boolean ready = false;
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public void rebuild(Collection<ProductResponse> products) {
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            documentTerms.clear();
+            products.forEach(this::addDocument);
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Product search index built with {} products and {} terms", products.size(), postings.size());
+    }
+
+    /**
+     * Returns the ids of matching products, most relevant first, capped at {@code limit}. Empty when
+     * a query token is the prefix of too many terms to score them all; the caller then searches the
+     * database instead, so no match is ever left out.
+     */
+    public Optional<List<UUID>> search(String query, int limit) {
+        List<String> queryTokens = tokenize(query);
+        if (queryTokens.isEmpty()) {
+            return Optional.of(List.of());
+        }
+
+        lock.readLock().lock();
+        try {
+            Map<UUID, Float> scores = null;
+            int documentCount = Math.max(documentTerms.size(), 1);
+
+            for (String token : queryTokens) {
+                Map<UUID, Float> tokenScores = scoreToken(token, documentCount);
+                if (tokenScores == null) {
+                    return Optional.empty();
+                }
+
+                if (scores == null) {
+                    scores = tokenScores;
+                } else {
+                    // Every query token must match
+                    scores.keySet().retainAll(tokenScores.keySet());
+                    for (Map.Entry<UUID, Float> entry : scores.entrySet()) {
+                        entry.setValue(entry.getValue() + tokenScores.get(entry.getKey()));
+                    }
+                }
+
+                if (scores.isEmpty()) {
+                    return Optional.of(List.of());
+                }
+            }
+
+            return Optional.of(scores.entrySet().stream()
+                    .sorted(Map.Entry.<UUID, Float>comparingByValue().reversed())
+                    .limit(limit)
+                    .map(Map.Entry::getKey)
+                    .toList());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        if (event.getUpserted().isEmpty() && event.getDeletedIds().isEmpty()) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            for (ProductResponse product : event.getUpserted()) {
+                removeDocument(product.getId());
+                addDocument(product);
+            }
+            event.getDeletedIds().forEach(this::removeDocument);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Null when the token expands to more than MAX_PREFIX_EXPANSIONS terms
+    private Map<UUID, Float> scoreToken(String token, int documentCount) {
+        Map<UUID, Float> tokenScores = new HashMap<>();
+
+        int expansions = 0;
+        for (Map.Entry<String, Map<UUID, Float>> term : postings.tailMap(token, true).entrySet()) {
+            if (!term.getKey().startsWith(token)) {
+                break;
+            }
+            if (++expansions > MAX_PREFIX_EXPANSIONS) {
+                return null;
+            }
+
+            Map<UUID, Float> documents = term.getValue();
+            float idf = (float) Math.log(1 + (double) documentCount / documents.size());
+            float penalty = term.getKey().length() == token.length() ? 1f : PREFIX_PENALTY;
+
+            // Keep the best matching term per product for this token
+            documents.forEach((id, frequency) ->
+                    tokenScores.merge(id, frequency * idf * penalty, Math::max));
+        }
+
+        return tokenScores;
+    }
+
+    private void addDocument(ProductResponse product) {
+        Map<String, Float> frequencies = new HashMap<>();
+        addField(frequencies, product.getName(), NAME_WEIGHT);
+        addField(frequencies, product.getCategoryName(), CATEGORY_WEIGHT);
+        addField(frequencies, product.getOrigin(), ORIGIN_WEIGHT);
+        addField(frequencies, product.getDescription(), DESCRIPTION_WEIGHT);
+
+        frequencies.forEach((term, frequency) ->
+                postings.computeIfAbsent(term, key -> new HashMap<>()).put(product.getId(), frequency));
+        documentTerms.put(product.getId(), frequencies.keySet());
+    }
+
+    private void removeDocument(UUID productId) {
+        Set<String> terms = documentTerms.remove(productId);
+        if (terms == null) {
+            return;
+        }
+
+        for (String term : terms) {
+            Map<UUID, Float> documents = postings.get(term);
+            if (documents != null) {
+                documents.remove(productId);
+                if (documents.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+        }
+    }
+
+    private static void addField(Map<String, Float> frequencies, String text, float weight) {
+        for (String token : tokenize(text)) {
+            frequencies.merge(token, weight, Float::sum);
+        }
+    }
+
+    /**
+     * Lowercases, strips tones/diacritics and splits on anything that is not a letter or digit.
+     */
+    public static List<String> tokenize(String text) {
+        if (text == null || text.isBlank()) {
+            return List.of();
+        }
+
+        return Arrays.stream(TOKEN_SEPARATOR.split(fold(text)))
+                .filter(token -> !token.isEmpty())
+                .toList();
+    }
+
+    public static String fold(String text) {
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        return COMBINING_MARKS.matcher(decomposed).replaceAll("")
+                .replace('đ', 'd')
+                .replace('Đ', 'D')
+                .toLowerCase(Locale.ROOT);
+    }
+}
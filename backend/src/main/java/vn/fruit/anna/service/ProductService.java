@@ -3,30 +3,51 @@ package vn.fruit.anna.service;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import jakarta.persistence.Query;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Root;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 import vn.fruit.anna.dto.request.CreateProductRequest;
 import vn.fruit.anna.dto.request.ListProductsByIdsRequest;
 import vn.fruit.anna.dto.filter.ProductFilter;
+import vn.fruit.anna.dto.response.CursorSliceResponse;
+import vn.fruit.anna.dto.response.ProductFacetsResponse;
 import vn.fruit.anna.dto.response.ProductResponse;
+import vn.fruit.anna.event.ProductChangedEvent;
+import vn.fruit.anna.exception.DataInUseException;
+import vn.fruit.anna.exception.InvalidDataException;
 import vn.fruit.anna.exception.ResourceNotFoundException;
+import vn.fruit.anna.exception.ServiceUnavailableException;
 import vn.fruit.anna.model.Category;
+import vn.fruit.anna.model.ImageVariants;
 import vn.fruit.anna.model.OrderItem;
 import vn.fruit.anna.model.Product;
 import vn.fruit.anna.model.ProductImage;
+import vn.fruit.anna.repository.AssetDeletionRepository;
 import vn.fruit.anna.repository.CategoryRepository;
 import vn.fruit.anna.repository.ProductRepository;
+import vn.fruit.anna.repository.specification.KeysetSpecification;
 import vn.fruit.anna.repository.specification.ProductSpecification;
 
 import java.io.IOException;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -35,180 +56,246 @@ import java.util.stream.Collectors;
 @Slf4j
 public class ProductService {
 
+    // Connector/J reports one count per statement for UPDATE batches, even with rewriteBatchedStatements
+    private static final String DECREMENT_STOCK =
+            "UPDATE product SET stock = stock - ?, version = version + 1 WHERE id = ? AND stock >= ?";
+
     @PersistenceContext
     private final EntityManager entityManager;
 
     private final ProductRepository productRepository;
     private final CategoryRepository categoryRepository;
-    private final CloudinaryService cloudinaryService;
+    private final AssetDeletionRepository assetDeletionRepository;
+    private final ImageUploadService imageUploadService;
+    private final ProductCatalogService productCatalogService;
+    private final RandomProductSampler randomProductSampler;
+    private final ProductSearchIndex productSearchIndex;
+    private final ProductFacetIndex productFacetIndex;
+    private final ResponsiveImageService responsiveImageService;
+    private final StockReservationService stockReservationService;
+    private final JdbcTemplate jdbcTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${product.search.max-results}")
+    private int searchMaxResults;
 
-    @Transactional
     public ProductResponse createProduct(CreateProductRequest request,
                                          MultipartFile thumbnailImageFile,
                                          List<MultipartFile> imageFiles) {
 
-        Optional<Product> existingProduct = productRepository.findByNameExactIgnoreCase(request.getName());
-        if (existingProduct.isPresent()) {
-            throw new IllegalArgumentException("Product with this name already exists!");
-        }
+        // Upload before any query, so no JDBC connection is held while Cloudinary responds
+        boolean hasThumbnail = thumbnailImageFile != null && !thumbnailImageFile.isEmpty();
+        List<ImageUploadService.UploadedImage> images = uploadImages(hasThumbnail ? thumbnailImageFile : null, imageFiles);
 
-        Category category = categoryRepository.findByName(request.getCategoryName())
-                .orElseThrow(() -> new IllegalArgumentException("Category not found!"));
-
-        Product product = Product.builder()
-                .name(request.getName())
-                .origin(request.getOrigin())
-                .description(request.getDescription())
-                .originalPrice(request.getOriginalPrice())
-                .sellingPrice(request.getSellingPrice())
-                .discountPercentage(request.getDiscountPercentage())
-                .unit(request.getUnit())
-                .stock(request.getStock())
-                .minUnitToOrder(request.getMinUnitToOrder())
-                .category(category)
-                .build();
+        return imageUploadService.saveUploaded("product.create", allUrls(images), replacedUrls -> {
+            Optional<Product> existingProduct = productRepository.findByNameExactIgnoreCase(request.getName());
+            if (existingProduct.isPresent()) {
+                throw new IllegalArgumentException("Product with this name already exists!");
+            }
 
-        if (thumbnailImageFile != null && !thumbnailImageFile.isEmpty()) {
-            try {
-                String thumbnailImageUrl = cloudinaryService.uploadImage(thumbnailImageFile);
-                product.setThumbnailImage(thumbnailImageUrl);
-            } catch (IOException e) {
-                throw new RuntimeException("Error uploading thumbnail image to Cloudinary", e);
+            Category category = categoryRepository.findByName(request.getCategoryName())
+                    .orElseThrow(() -> new IllegalArgumentException("Category not found!"));
+
+            Product product = Product.builder()
+                    .name(request.getName())
+                    .origin(request.getOrigin())
+                    .description(request.getDescription())
+                    .originalPrice(request.getOriginalPrice())
+                    .sellingPrice(request.getSellingPrice())
+                    .discountPercentage(request.getDiscountPercentage())
+                    .unit(request.getUnit())
+                    .stock(request.getStock())
+                    .minUnitToOrder(request.getMinUnitToOrder())
+                    .category(category)
+                    .build();
+
+            if (hasThumbnail) {
+                product.setThumbnailImage(images.get(0).url());
+                product.setThumbnailImageVariants(images.get(0).variants());
             }
-        }
 
-        List<ProductImage> productImages = new ArrayList<>();
-        if (imageFiles != null && !imageFiles.isEmpty()) {
-            try {
-                for (MultipartFile imageFile : imageFiles) {
-                    String imageUrl = cloudinaryService.uploadImage(imageFile);
-                    ProductImage productImage = ProductImage.builder()
-                            .image(imageUrl)
-                            .product(product)
-                            .build();
-                    productImages.add(productImage);
-                }
-            } catch (IOException e) {
-                throw new RuntimeException("Error uploading product images to Cloudinary", e);
+            List<ProductImage> productImages = new ArrayList<>();
+            for (ImageUploadService.UploadedImage image : images.subList(hasThumbnail ? 1 : 0, images.size())) {
+                ProductImage productImage = ProductImage.builder()
+                        .image(image.url())
+                        .variants(image.variants())
+                        .product(product)
+                        .build();
+                productImages.add(productImage);
             }
-        }
 
-        product.setProductImages(productImages);
+            product.setProductImages(productImages);
 
-        productRepository.save(product);
+            productRepository.save(product);
 
-        return toResponse(product);
+            ProductResponse response = responsiveImageService.apply(toResponse(product));
+            eventPublisher.publishEvent(ProductChangedEvent.upserted(List.of(response)));
+            return response;
+        });
     }
 
-    @Transactional
     public ProductResponse updateProduct(UUID id,
                                          CreateProductRequest request,
                                          MultipartFile thumbnailImageFile,
                                          List<MultipartFile> imageFiles) {
-        Product existingProduct = productRepository.findById(id)
-                .orElseThrow(() -> new IllegalArgumentException("Product not found!"));
-
-        Category category = categoryRepository.findByName(request.getCategoryName())
-                .orElseThrow(() -> new IllegalArgumentException("Category not found!"));
-
-        existingProduct.setName(request.getName());
-        existingProduct.setOrigin(request.getOrigin());
-        existingProduct.setDescription(request.getDescription());
-        existingProduct.setOriginalPrice(request.getOriginalPrice());
-        existingProduct.setSellingPrice(request.getSellingPrice());
-        existingProduct.setDiscountPercentage(request.getDiscountPercentage());
-        existingProduct.setUnit(request.getUnit());
-        existingProduct.setStock(request.getStock());
-        existingProduct.setMinUnitToOrder(request.getMinUnitToOrder());
-        existingProduct.setCategory(category);
-
-        String oldThumbnailUrl = existingProduct.getThumbnailImage();
-
-        if (thumbnailImageFile != null && !thumbnailImageFile.isEmpty()) {
-            try {
-                // Upload the new thumbnail image
-                String newThumbnailImageUrl = cloudinaryService.uploadImage(thumbnailImageFile);
-                existingProduct.setThumbnailImage(newThumbnailImageUrl);
-
-                // Delete the old thumbnail image from Cloudinary
+
+        // The new thumbnail and new images are uploaded together, before any query
+        boolean hasThumbnail = thumbnailImageFile != null && !thumbnailImageFile.isEmpty();
+        List<ImageUploadService.UploadedImage> uploadedImages = uploadImages(hasThumbnail ? thumbnailImageFile : null, imageFiles);
+
+        return imageUploadService.saveUploaded("product.update", allUrls(uploadedImages), replacedUrls -> {
+            Product existingProduct = productRepository.findById(id)
+                    .orElseThrow(() -> new IllegalArgumentException("Product not found!"));
+
+            Category category = categoryRepository.findByName(request.getCategoryName())
+                    .orElseThrow(() -> new IllegalArgumentException("Category not found!"));
+
+            existingProduct.setName(request.getName());
+            existingProduct.setOrigin(request.getOrigin());
+            existingProduct.setDescription(request.getDescription());
+            existingProduct.setOriginalPrice(request.getOriginalPrice());
+            existingProduct.setSellingPrice(request.getSellingPrice());
+            existingProduct.setDiscountPercentage(request.getDiscountPercentage());
+            existingProduct.setUnit(request.getUnit());
+            // Leased units are not on the row, and an absolute value would come on top of them when they return
+            boolean hot = stockReservationService.isHot(id);
+            if (!hot) {
+                existingProduct.setStock(request.getStock());
+            } else if (!Objects.equals(request.getStock(), stockReservationService.shownStock(id, existingProduct.getStock()))) {
+                throw new DataInUseException("Stock of " + existingProduct.getName() + " cannot be edited while it is sold from leased stock");
+            }
+            existingProduct.setMinUnitToOrder(request.getMinUnitToOrder());
+            existingProduct.setCategory(category);
+
+            if (hasThumbnail) {
+                // The old thumbnail is deleted from Cloudinary after commit
+                String oldThumbnailUrl = existingProduct.getThumbnailImage();
                 if (oldThumbnailUrl != null && !oldThumbnailUrl.isBlank()) {
-                    String publicId = cloudinaryService.getPublicIdFromUrl(oldThumbnailUrl);
-                    cloudinaryService.deleteAsset(publicId);
+                    replacedUrls.add(oldThumbnailUrl);
+                }
+                if (existingProduct.getThumbnailImageVariants() != null) {
+                    replacedUrls.addAll(existingProduct.getThumbnailImageVariants().urls());
                 }
-            } catch (IOException e) {
-                throw new IllegalArgumentException("Error uploading new thumbnail image to Cloudinary", e);
+                existingProduct.setThumbnailImage(uploadedImages.get(0).url());
+                existingProduct.setThumbnailImageVariants(uploadedImages.get(0).variants());
             }
-        }
 
-        // Handle product images - first detach all existing images to avoid orphan deletion issues
-        List<ProductImage> existingImages = new ArrayList<>(existingProduct.getProductImages());
+            // Handle product images - first detach all existing images to avoid orphan deletion issues
+            List<ProductImage> existingImages = new ArrayList<>(existingProduct.getProductImages());
+
+            // Get the list of remaining image IDs from the request
+            List<String> removedImageUrls = request.getRemovedImageUrls();
+
+            // Remove images that are marked for deletion
+            if (removedImageUrls != null && !removedImageUrls.isEmpty()) {
+                for (ProductImage image : existingImages) {
+                    if (removedImageUrls.contains(image.getImage())) {
+                        existingProduct.getProductImages().remove(image);
+                        replacedUrls.add(image.getImage());
+                        if (image.getVariants() != null) {
+                            replacedUrls.addAll(image.getVariants().urls());
+                        }
+                    }
+                }
+            }
 
-        // Get the list of remaining image IDs from the request
-        List<String> removedImageUrls = request.getRemovedImageUrls();
+            // Add new images if any
+            for (ImageUploadService.UploadedImage image : uploadedImages.subList(hasThumbnail ? 1 : 0, uploadedImages.size())) {
+                ProductImage productImage = ProductImage.builder()
+                        .image(image.url())
+                        .variants(image.variants())
+                        .product(existingProduct)
+                        .build();
+                existingProduct.getProductImages().add(productImage);
+            }
 
-        // Remove images that are marked for deletion
-        if (removedImageUrls != null && !removedImageUrls.isEmpty()) {
-            for (ProductImage image : existingImages) {
-                if (removedImageUrls.contains(image.getImage())) {
-                    existingProduct.getProductImages().remove(image);
+            // Flushed so the response carries the bumped version
+            Product savedProduct = productRepository.saveAndFlush(existingProduct);
 
-                    // Delete images that are no longer needed
-                    try {
-                        String publicId = cloudinaryService.getPublicIdFromUrl(image.getImage());
-                        cloudinaryService.deleteAsset(publicId);
-                    }
-                    catch (Exception e) {
-                        log.error("Error deleting image from Cloudinary: {}", e.getMessage());
-                    }
-                }
+            ProductResponse response = responsiveImageService.apply(toResponse(savedProduct));
+            if (hot) {
+                response.setStock(stockReservationService.shownStock(id, savedProduct.getStock()));
             }
+            eventPublisher.publishEvent(ProductChangedEvent.upserted(List.of(response)));
+            return response;
+        });
+    }
+
+    // Thumbnail first (when given), then the non-empty image files in their original order
+    private List<ImageUploadService.UploadedImage> uploadImages(MultipartFile thumbnailImageFile,
+                                                                List<MultipartFile> imageFiles) {
+        List<MultipartFile> files = new ArrayList<>();
+        if (thumbnailImageFile != null) {
+            files.add(thumbnailImageFile);
+        }
+        if (imageFiles != null) {
+            imageFiles.stream()
+                    .filter(imageFile -> imageFile != null && !imageFile.isEmpty())
+                    .forEach(files::add);
         }
 
-        // Add new images if any
-        if (imageFiles != null && !imageFiles.isEmpty()) {
-            try {
-                for (MultipartFile imageFile : imageFiles) {
-                    if (!imageFile.isEmpty()) {
-                        String imageUrl = cloudinaryService.uploadImage(imageFile);
-                        ProductImage productImage = ProductImage.builder()
-                                .image(imageUrl)
-                                .product(existingProduct)
-                                .build();
-                        existingProduct.getProductImages().add(productImage);
-                    }
-                }
-            } catch (IOException e) {
-                throw new IllegalArgumentException("Error uploading product images to Cloudinary", e);
-            }
+        try {
+            return imageUploadService.uploadAllOptimized(files);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Error uploading product images to Cloudinary", e);
         }
+    }
 
-        Product savedProduct = productRepository.save(existingProduct);
+    private static List<String> allUrls(List<ImageUploadService.UploadedImage> images) {
+        return images.stream()
+                .flatMap(image -> image.urls().stream())
+                .toList();
+    }
 
-        return toResponse(savedProduct);
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void loadCatalog() {
+        productCatalogService.rebuild(() ->
+                attachImages(productRepository.findAllResponses(), productRepository.findAllImageUrls()));
+        productSearchIndex.rebuild(productCatalogService.products());
+        productFacetIndex.rebuild(productCatalogService.products());
     }
 
     public ProductResponse getProductById(UUID id) {
-        Product product = productRepository.findById(id).orElseThrow(() -> new RuntimeException("Product not found"));
-        return toResponse(product);
+        return productCatalogService.findById(id).orElseGet(() -> findResponsesByIds(List.of(id)).stream()
+                .findFirst()
+                .orElseThrow(() -> new RuntimeException("Product not found")));
     }
 
     public List<?> getAllProduct() {
-        return productRepository.findAllByThumbnailImageIsNotNull().stream().map(this::toResponse).toList();
+        return productCatalogService.findAllWithThumbnail().orElseGet(() ->
+                attachImages(productRepository.findAllResponsesWithThumbnail(), productRepository.findAllImageUrls()));
     }
 
     public List<?> getRandom12Products() {
-        return productRepository.findRandom12Products().stream().map(this::toResponse).toList();
+        return findResponsesByIds(randomProductSampler.sample(12));
     }
 
     public List<?> get8NewestProducts() {
-        return productRepository.find8NewestProducts().stream().map(this::toResponse).toList();
+        return attachImages(productRepository.findNewestResponses(PageRequest.of(0, 8)));
     }
 
     public List<?> getProductsByIds(ListProductsByIdsRequest request) {
-        List<UUID> productIds = request.getProductIds();
+        return findResponsesByIds(request.getProductIds());
+    }
+
+    private List<ProductResponse> findResponsesByIds(List<UUID> productIds) {
+        Map<UUID, ProductResponse> found = new HashMap<>(productCatalogService.findAllByIds(productIds));
 
-        return productRepository.findAllById(productIds).stream()
-                .map(this::toResponse)
+        // Only hit the database for the ids the catalog does not know about
+        List<UUID> missingIds = productIds.stream()
+                .filter(id -> !found.containsKey(id))
+                .toList();
+
+        if (!missingIds.isEmpty()) {
+            attachImages(productRepository.findResponsesByIds(missingIds))
+                    .forEach(product -> found.put(product.getId(), product));
+        }
+
+        // Keep the order of the requested ids
+        return productIds.stream()
+                .map(found::get)
+                .filter(Objects::nonNull)
                 .toList();
     }
 
@@ -220,27 +307,8 @@ public class ProductService {
             return;
         }
 
-        List<Product> products = productRepository.findAllById(productIds);
-
-        if (products.isEmpty()) {
-            return;
-        }
-
-        for (Product product : products) {
-            String oldUrl = product.getThumbnailImage();
-
-            if (oldUrl != null && !oldUrl.isBlank()) {
-                String publicId = cloudinaryService.getPublicIdFromUrl(oldUrl);
-                if (publicId != null && !publicId.isBlank()) {
-                    try {
-                        cloudinaryService.deleteAsset(publicId);
-                    }
-                    catch (IOException e) {
-                        throw new RuntimeException("Error deleting image from Cloudinary");
-                    }
-                }
-            }
-        }
+        // Images are removed from Cloudinary by the asset deletion worker once this commits
+        assetDeletionRepository.enqueueProductAssets(productIds);
 
         // More type-safe way to delete
         int deletedCount = entityManager.createQuery("DELETE FROM Product p WHERE p.id IN :productIds")
@@ -254,6 +322,8 @@ public class ProductService {
 //        int deletedCount = query.executeUpdate();
 
         log.info("Deleted {} products in a single operation", deletedCount);
+
+        eventPublisher.publishEvent(ProductChangedEvent.deleted(productIds));
     }
 
 
@@ -262,7 +332,9 @@ public class ProductService {
                 ? Sort.Direction.DESC
                 : Sort.Direction.ASC;
 
-        List<String> allowedSortFields = List.of("categoryName", "unit");
+        boolean sortByRelevance = sortBy.equals("relevance");
+
+        List<String> allowedSortFields = List.of("categoryName", "unit", "price");
         if (!allowedSortFields.contains(sortBy)) {
             sortBy = "createdAt"; // fallback
         }
@@ -272,17 +344,155 @@ public class ProductService {
             sort = Sort.by(sortDirection, "category.name");
         }
 
+        if (sortBy.equals("price")) {
+            sort = Sort.by(sortDirection, "effectivePrice");
+        }
+
         Pageable pageable = PageRequest.of(page, size, sort);
+
+        // Only a relevance ranking is cut to the top matches; other sorts, like facet counts, see every match
+        List<UUID> rankedIds = isIndexedSearch(filter)
+                ? productSearchIndex.search(filter.getName(), sortByRelevance ? searchMaxResults : Integer.MAX_VALUE).orElse(null)
+                : null;
+        if (rankedIds == null) {
+            // No name filter, or one too broad for the index
+            Specification<Product> spec = ProductSpecification.applyFilter(filter);
+            return productRepository.findAll(spec, pageable).map(this::toResponseWithSrcsets);
+        }
+        if (rankedIds.isEmpty()) {
+            return Page.empty(pageable);
+        }
+
+        Specification<Product> spec = applyIndexedFilter(filter, rankedIds);
+        if (!sortByRelevance) {
+            return productRepository.findAll(spec, pageable).map(this::toResponseWithSrcsets);
+        }
+
+        // Keep the index ranking, only asking the database which of the ranked ids pass the other filters
+        List<UUID> matchingIds = rankedIds;
+        if (hasNonTextFilter(filter)) {
+            Set<UUID> filteredIds = new HashSet<>(findIds(spec));
+            matchingIds = rankedIds.stream().filter(filteredIds::contains).toList();
+        }
+
+        int from = (int) Math.min(pageable.getOffset(), matchingIds.size());
+        int to = Math.min(from + size, matchingIds.size());
+        return new PageImpl<>(findResponsesByIds(matchingIds.subList(from, to)), pageable, matchingIds.size());
+    }
+
+    public CursorSliceResponse<?> searchProductsAfter(ProductFilter filter, String after, int size, String sortBy, String direction) {
+        Sort.Direction sortDirection = direction.equalsIgnoreCase("desc")
+                ? Sort.Direction.DESC
+                : Sort.Direction.ASC;
+
+        String sortField = switch (sortBy) {
+            case "createdAt" -> "createdAt";
+            case "categoryName" -> "category.name";
+            case "price" -> "effectivePrice";
+            case "unit" -> "unit";
+            default -> throw new InvalidDataException("Unsupported sort for cursor pagination: " + sortBy);
+        };
+
         Specification<Product> spec = ProductSpecification.applyFilter(filter);
-        return productRepository.findAll(spec, pageable).map(this::toResponse);
+        Optional<List<UUID>> indexedIds = isIndexedSearch(filter)
+                ? productSearchIndex.search(filter.getName(), Integer.MAX_VALUE)
+                : Optional.empty();
+        if (indexedIds.isPresent()) {
+            List<UUID> rankedIds = indexedIds.get();
+            if (rankedIds.isEmpty()) {
+                return new CursorSliceResponse<>(List.of(), size, false, null);
+            }
+            spec = applyIndexedFilter(filter, rankedIds);
+        }
+        return KeysetSpecification.findSlice(productRepository, spec, sortField, sortDirection, after, size, this::toResponseWithSrcsets);
+    }
+
+    /**
+     * Facet counts for the given filter, computed from in-memory bitmaps instead of SQL GROUP BY queries.
+     */
+    public ProductFacetsResponse countFacets(ProductFilter filter) {
+        if (!productFacetIndex.isReady()) {
+            // Still warming up after a restart: a server condition, not a bad request
+            throw new ServiceUnavailableException("Product facets are not available yet");
+        }
+
+        List<UUID> nameMatches = null;
+        if (filter.getName() != null && !filter.getName().isBlank()) {
+            // A name too broad for the index is matched by the database
+            nameMatches = productSearchIndex.search(filter.getName(), Integer.MAX_VALUE)
+                    .orElseGet(() -> findIds(ProductSpecification.applyFilter(ProductFilter.builder().name(filter.getName()).build())));
+        }
+        return productFacetIndex.count(filter, nameMatches);
+    }
+
+    private boolean isIndexedSearch(ProductFilter filter) {
+        return filter.getName() != null && !filter.getName().isBlank() && productSearchIndex.isReady();
+    }
+
+    private boolean hasNonTextFilter(ProductFilter filter) {
+        return filter.getMinPrice() != null
+                || filter.getMaxPrice() != null
+                || (filter.getCategoryName() != null && !filter.getCategoryName().isEmpty())
+                || (filter.getOrigin() != null && !filter.getOrigin().isEmpty());
     }
 
-    private ProductResponse toResponse(Product product) {
-        List<String> imageUrls = Optional.ofNullable(product.getProductImages())
-                .orElse(Collections.emptyList())
-                .stream()
+    // The name filter is answered by the search index, the remaining filters still run in SQL
+    private Specification<Product> applyIndexedFilter(ProductFilter filter, List<UUID> matchedIds) {
+        ProductFilter withoutName = ProductFilter.builder()
+                .origin(filter.getOrigin())
+                .minPrice(filter.getMinPrice())
+                .maxPrice(filter.getMaxPrice())
+                .categoryName(filter.getCategoryName())
+                .build();
+        return ProductSpecification.applyFilter(withoutName).and(ProductSpecification.idIn(matchedIds));
+    }
+
+    private List<UUID> findIds(Specification<Product> spec) {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<UUID> query = criteriaBuilder.createQuery(UUID.class);
+        Root<Product> root = query.from(Product.class);
+        query.select(root.<UUID>get("id")).where(spec.toPredicate(root, query, criteriaBuilder));
+        return entityManager.createQuery(query).getResultList();
+    }
+
+    // One grouped query for the images of the whole list, instead of one lazy load per product
+    private List<ProductResponse> attachImages(List<ProductResponse> products) {
+        if (products.isEmpty()) {
+            return products;
+        }
+
+        List<UUID> productIds = products.stream().map(ProductResponse::getId).toList();
+        return attachImages(products, productRepository.findImageUrlsByProductIds(productIds));
+    }
+
+    private List<ProductResponse> attachImages(List<ProductResponse> products, List<Object[]> imageRows) {
+        Map<UUID, ProductResponse> byId = new HashMap<>();
+        products.forEach(product -> byId.put(product.getId(), product));
+
+        for (Object[] row : imageRows) {
+            ProductResponse product = byId.get((UUID) row[0]);
+            if (product != null) {
+                product.getImages().add((String) row[1]);
+                product.getImageVariants().add(ImageVariants.of((String) row[2], (String) row[3], (String) row[4]));
+            }
+        }
+        products.forEach(responsiveImageService::apply);
+        return products;
+    }
+
+    private ProductResponse toResponseWithSrcsets(Product product) {
+        return responsiveImageService.apply(toResponse(product));
+    }
+
+    static ProductResponse toResponse(Product product) {
+        List<ProductImage> productImages = Optional.ofNullable(product.getProductImages())
+                .orElse(Collections.emptyList());
+        List<String> imageUrls = productImages.stream()
                 .map(ProductImage::getImage)
                 .toList();
+        List<ImageVariants> imageVariants = productImages.stream()
+                .map(ProductImage::getVariants)
+                .toList();
 
         String categoryName = product.getCategory() != null ? product.getCategory().getName() : null;
 
@@ -292,35 +502,76 @@ public class ProductService {
                 .origin(product.getOrigin())
                 .description(product.getDescription())
                 .thumbnailImage(product.getThumbnailImage())
+                .thumbnailImageVariants(product.getThumbnailImageVariants())
                 .originalPrice(product.getOriginalPrice())
                 .sellingPrice(product.getSellingPrice())
                 .discountPercentage(product.getDiscountPercentage())
+                .effectivePrice(product.getEffectivePrice())
                 .unit(product.getUnit())
                 .stock(product.getStock())
                 .minUnitToOrder(product.getMinUnitToOrder())
                 .categoryName(categoryName)
+                .version(product.getVersion())
                 .images(imageUrls)
+                .imageVariants(imageVariants)
                 .build();
     }
 
+    /**
+     * Decrements the stock of every ordered product in one JDBC batch of conditional updates.
+     *
+     * A row is only updated while it still has enough stock, so concurrent orders can never
+     * oversell; any product left unchanged fails the whole order. Rows are locked in the order of
+     * their VARCHAR keys, the same order in which the group-commit batches lock them, so two
+     * orders cannot wait on each other's rows. {@link UUID#compareTo} compares signed longs and
+     * would disagree with the database. The caller retries the transaction on the deadlocks that
+     * remain possible with other writers.
+     */
     @Transactional
     public void updateStockBulk(List<OrderItem> orderItems) {
+        SortedMap<UUID, Integer> quantities = new TreeMap<>(Comparator.comparing(UUID::toString));
         for (OrderItem item : orderItems) {
-            updateStock(item.getProductId(), item.getQuantity());
+            quantities.merge(item.getProductId(), item.getQuantity(), Integer::sum);
+        }
+        if (quantities.isEmpty()) {
+            return;
         }
-    }
 
-    public void updateStock(UUID productId, int quantityToReduce) {
-        Product product = productRepository.findById(productId)
-                .orElseThrow(() -> new ResourceNotFoundException("Product not found: " + productId));
+        List<Map.Entry<UUID, Integer>> rows = new ArrayList<>(quantities.entrySet());
+        int[] updateCounts = jdbcTemplate.batchUpdate(DECREMENT_STOCK, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement statement, int i) throws SQLException {
+                Map.Entry<UUID, Integer> row = rows.get(i);
+                statement.setInt(1, row.getValue());
+                statement.setString(2, row.getKey().toString());
+                statement.setInt(3, row.getValue());
+            }
 
-        int currentStock = Optional.ofNullable(product.getStock()).orElse(0);
+            @Override
+            public int getBatchSize() {
+                return rows.size();
+            }
+        });
 
-        if (currentStock < quantityToReduce) {
-            throw new IllegalArgumentException("Not enough stock for product: " + product.getName());
+        List<UUID> outOfStock = new ArrayList<>();
+        for (int i = 0; i < updateCounts.length; i++) {
+            if (updateCounts[i] == 0) {
+                outOfStock.add(rows.get(i).getKey());
+            }
+        }
+        if (!outOfStock.isEmpty()) {
+            String names = productRepository.findAllById(outOfStock).stream()
+                    .map(Product::getName)
+                    .collect(Collectors.joining(", "));
+            throw new IllegalArgumentException("Not enough stock for product: " + names);
         }
 
-        product.setStock(currentStock - quantityToReduce);
+        // Read under the row locks just taken, so the versions follow the commit order of each row
+        Map<UUID, ProductChangedEvent.StockLevel> stockChanges = new HashMap<>();
+        for (Object[] row : productRepository.findStocksByIds(quantities.keySet())) {
+            stockChanges.put((UUID) row[0], new ProductChangedEvent.StockLevel((Integer) row[1], (Long) row[2]));
+        }
+        eventPublisher.publishEvent(ProductChangedEvent.stockChanged(stockChanges));
     }
 
 }
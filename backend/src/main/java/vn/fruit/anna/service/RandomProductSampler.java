@@ -0,0 +1,114 @@
+package vn.fruit.anna.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import vn.fruit.anna.dto.response.ProductResponse;
+import vn.fruit.anna.event.ProductChangedEvent;
+import vn.fruit.anna.repository.ProductRepository;
+
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Draws random products from a compact array of product ids instead of
+ * sorting the whole product table with {@code ORDER BY RAND()}.
+ */
+@Component
+@RequiredArgsConstructor
+public class RandomProductSampler {
+
+    private final ProductRepository productRepository;
+
+    private volatile UUID[] productIds;
+    // Position of each id in productIds, only touched under the lock
+    private final Map<UUID, Integer> positions = new HashMap<>();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void reload() {
+        UUID[] ids = productRepository.findAllIds().toArray(new UUID[0]);
+        positions.clear();
+        for (int i = 0; i < ids.length; i++) {
+            positions.put(ids[i], i);
+        }
+        productIds = ids;
+    }
+
+    /**
+     * Picks up to {@code count} distinct product ids in O(count), using Floyd's sampling algorithm.
+     */
+    public List<UUID> sample(int count) {
+        UUID[] ids = productIds;
+        if (ids == null) {
+            reload();
+            ids = productIds;
+        }
+
+        int n = ids.length;
+        if (count >= n) {
+            List<UUID> all = new ArrayList<>(Arrays.asList(ids));
+            Collections.shuffle(all);
+            return all;
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Set<Integer> picked = new LinkedHashSet<>(count * 2);
+        for (int j = n - count; j < n; j++) {
+            int candidate = random.nextInt(j + 1);
+            picked.add(picked.contains(candidate) ? j : candidate);
+        }
+
+        List<UUID> sample = new ArrayList<>(count);
+        for (int index : picked) {
+            sample.add(ids[index]);
+        }
+        Collections.shuffle(sample, random);
+        return sample;
+    }
+
+    /**
+     * Edits of existing products leave the array alone; only new and deleted ids patch it, deletions
+     * by moving the last id into the freed slot.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onProductChanged(ProductChangedEvent event) {
+        UUID[] ids = productIds;
+        if (ids == null) {
+            return;
+        }
+
+        List<UUID> added = new ArrayList<>();
+        for (ProductResponse product : event.getUpserted()) {
+            if (!positions.containsKey(product.getId())) {
+                added.add(product.getId());
+            }
+        }
+        if (added.isEmpty() && event.getDeletedIds().stream().noneMatch(positions::containsKey)) {
+            return;
+        }
+
+        // Patched on a copy, so a sample in progress keeps reading a consistent array
+        UUID[] patched = Arrays.copyOf(ids, ids.length + added.size());
+        int size = ids.length;
+        for (UUID id : added) {
+            if (positions.putIfAbsent(id, size) == null) {
+                patched[size++] = id;
+            }
+        }
+        for (UUID id : event.getDeletedIds()) {
+            Integer position = positions.remove(id);
+            if (position == null) {
+                continue;
+            }
+            UUID last = patched[--size];
+            if (position != size) {
+                patched[position] = last;
+                positions.put(last, position);
+            }
+        }
+
+        productIds = size == patched.length ? patched : Arrays.copyOf(patched, size);
+    }
+}
@@ -0,0 +1,124 @@
+package vn.fruit.anna.service;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import vn.fruit.anna.event.ProductChangedEvent;
+import vn.fruit.anna.model.Banner;
+import vn.fruit.anna.model.Blog;
+import vn.fruit.anna.model.Category;
+import vn.fruit.anna.model.Product;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cheap versions for public read resources, used as strong ETags.
+ *
+ * Each resource type is versioned by the newest {@code updatedAt} seen at startup plus a counter
+ * that is bumped after every committed write, so computing an ETag never touches the database.
+ * The process start time is part of the version because counters restart from zero.
+ *
+ * Versions only count the writes this instance makes, just as the in-memory catalog the responses
+ * are served from only sees those writes, so two instances never agree on them. ETags are
+ * therefore only sent with {@code http.etag.enabled}, which must be turned off whenever more than
+ * one instance serves the API.
+ */
+@Service
+@Slf4j
+public class ResourceVersionService {
+
+    public static final String PRODUCT = "product";
+    public static final String CATEGORY = "category";
+    public static final String BANNER = "banner";
+    public static final String BLOG = "blog";
+
+    private static final Map<Class<?>, String> RESOURCES = Map.of(
+            Product.class, PRODUCT,
+            Category.class, CATEGORY,
+            Banner.class, BANNER,
+            Blog.class, BLOG
+    );
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final long startedAt = System.currentTimeMillis();
+
+    private final Map<String, AtomicLong> counters = Map.of(
+            PRODUCT, new AtomicLong(),
+            CATEGORY, new AtomicLong(),
+            BANNER, new AtomicLong(),
+            BLOG, new AtomicLong()
+    );
+
+    private final Map<String, AtomicLong> lastUpdatedAt = Map.of(
+            PRODUCT, new AtomicLong(),
+            CATEGORY, new AtomicLong(),
+            BANNER, new AtomicLong(),
+            BLOG, new AtomicLong()
+    );
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadLastUpdatedAt() {
+        RESOURCES.forEach((entityClass, resource) -> {
+            Date maxUpdatedAt = entityManager
+                    .createQuery("SELECT MAX(e.updatedAt) FROM " + entityClass.getSimpleName() + " e", Date.class)
+                    .getSingleResult();
+            if (maxUpdatedAt != null) {
+                lastUpdatedAt.get(resource).accumulateAndGet(maxUpdatedAt.getTime(), Math::max);
+            }
+        });
+    }
+
+    /**
+     * Strong ETag covering all the given resource types.
+     */
+    public String etag(String... resources) {
+        StringBuilder version = new StringBuilder().append(Long.toHexString(startedAt));
+        for (String resource : resources) {
+            version.append('-').append(Long.toHexString(lastUpdatedAt.get(resource).get()))
+                    .append('.').append(Long.toHexString(counters.get(resource).get()));
+        }
+        return "\"" + version + "\"";
+    }
+
+    /**
+     * Marks the resource type of the entity as changed, once the current transaction commits.
+     */
+    public void touch(Class<?> entityClass) {
+        String resource = RESOURCES.get(entityClass);
+        if (resource == null) {
+            return;
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    bump(resource);
+                }
+            });
+        } else {
+            bump(resource);
+        }
+    }
+
+    // Product writes include bulk JPQL deletes that bypass entity listeners, so they are tracked by event
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        bump(PRODUCT);
+    }
+
+    private void bump(String resource) {
+        lastUpdatedAt.get(resource).accumulateAndGet(System.currentTimeMillis(), Math::max);
+        counters.get(resource).incrementAndGet();
+    }
+}
@@ -0,0 +1,82 @@
+package vn.fruit.anna.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import vn.fruit.anna.dto.response.ProductResponse;
+import vn.fruit.anna.model.ImageVariants;
+
+import java.util.*;
+
+/**
+ * Builds srcset-style maps of width-bounded image URLs, one entry per configured breakpoint.
+ *
+ * Stores that resize on the fly (Cloudinary) get a transformation URL per width; otherwise the
+ * smallest stored variant that is at least as wide is used. Maps are computed once when a product
+ * response is built and travel with it into the catalog, so reads never derive URLs again.
+ * The maps hold origin URLs; the image proxy is applied when the response is serialized.
+ */
+@Service
+public class ResponsiveImageService {
+
+    private final ImageStore imageStore;
+    private final int[] breakpoints;
+    private final int thumbnailSize;
+    private final int cardSize;
+
+    public ResponsiveImageService(ImageStore imageStore,
+                                  @Value("${media.responsive.breakpoints}") int[] breakpoints,
+                                  @Value("${media.optimize.thumbnail-size}") int thumbnailSize,
+                                  @Value("${media.optimize.card-size}") int cardSize) {
+        this.imageStore = imageStore;
+        this.breakpoints = breakpoints.clone();
+        Arrays.sort(this.breakpoints);
+        this.thumbnailSize = thumbnailSize;
+        this.cardSize = cardSize;
+    }
+
+    /**
+     * Fills the srcsets of the product in place, unless they were computed before.
+     * Must be called before the response is shared.
+     */
+    public ProductResponse apply(ProductResponse product) {
+        if (product.getThumbnailImageSrcset() == null) {
+            product.setThumbnailImageSrcset(srcset(product.getThumbnailImage(), product.getThumbnailImageVariants()));
+        }
+
+        if (product.getImageSrcsets() == null && product.getImages() != null) {
+            List<ImageVariants> variants = product.getImageVariants();
+            List<Map<Integer, String>> srcsets = new ArrayList<>(product.getImages().size());
+            for (int i = 0; i < product.getImages().size(); i++) {
+                ImageVariants imageVariants = variants != null && i < variants.size() ? variants.get(i) : null;
+                srcsets.add(srcset(product.getImages().get(i), imageVariants));
+            }
+            product.setImageSrcsets(Collections.unmodifiableList(srcsets));
+        }
+        return product;
+    }
+
+    public Map<Integer, String> srcset(String url, ImageVariants variants) {
+        if (url == null || url.isBlank()) {
+            return null;
+        }
+
+        Map<Integer, String> srcset = new LinkedHashMap<>();
+        for (int width : breakpoints) {
+            String resized = imageStore.resizedUrl(url, width);
+            srcset.put(width, resized != null ? resized : storedVariant(url, variants, width));
+        }
+        return Collections.unmodifiableMap(srcset);
+    }
+
+    private String storedVariant(String url, ImageVariants variants, int width) {
+        if (variants != null) {
+            if (variants.getThumbnail() != null && width <= thumbnailSize) {
+                return variants.getThumbnail();
+            }
+            if (variants.getCard() != null && width <= cardSize) {
+                return variants.getCard();
+            }
+        }
+        return url;
+    }
+}
@@ -0,0 +1,259 @@
+package vn.fruit.anna.service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/**
+ * Lock-free stock counters for hot products, with expiring reservations.
+ *
+ * Each product's stock is split over padded stripes that are only ever decremented by CAS from a
+ * value that covers the whole amount, so a counter never goes below zero and no more units can be
+ * handed out than were put in. A reservation moves through ACTIVE, CONFIRMED and COMMITTED; every
+ * transition is a CAS on its state, so exactly one of commit, release or expiry decides what
+ * happens to its units. Committed units are gone from the engine; it never writes them anywhere.
+ */
+public class StockReservationEngine {
+
+    public enum State {
+        ACTIVE,
+        CONFIRMED,
+        COMMITTED,
+        RELEASED,
+        EXPIRED
+    }
+
+    public static final class Reservation {
+        private final long id;
+        private final Map<UUID, Integer> quantities;
+        private final long deadline;
+        private final AtomicReference<State> state = new AtomicReference<>(State.ACTIVE);
+
+        private Reservation(long id, Map<UUID, Integer> quantities, long deadline) {
+            this.id = id;
+            this.quantities = quantities;
+            this.deadline = deadline;
+        }
+
+        public Map<UUID, Integer> getQuantities() {
+            return quantities;
+        }
+
+        public State getState() {
+            return state.get();
+        }
+    }
+
+    private final int stripes;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+
+    private final Map<UUID, StripedStock> stocks = new ConcurrentHashMap<>();
+    private final Map<Long, Reservation> active = new ConcurrentHashMap<>();
+    private final AtomicLong reservationIds = new AtomicLong();
+
+    public StockReservationEngine(int stripes, long ttlNanos, LongSupplier clock) {
+        this.stripes = stripes;
+        this.ttlNanos = ttlNanos;
+        this.clock = clock;
+    }
+
+    public void track(UUID productId, long stock) {
+        stocks.put(productId, new StripedStock(stripes, Math.max(0, stock)));
+    }
+
+    /**
+     * Makes more units of a tracked product available.
+     */
+    public void add(UUID productId, long units) {
+        stocks.get(productId).put(units);
+    }
+
+    /**
+     * Takes every unit not held by a reservation out of the engine and returns how many.
+     */
+    public long surrender(UUID productId) {
+        StripedStock stock = stocks.get(productId);
+        return stock != null ? stock.takeAll() : 0;
+    }
+
+    public boolean isTracked(UUID productId) {
+        return stocks.containsKey(productId);
+    }
+
+    public Set<UUID> trackedProducts() {
+        return Collections.unmodifiableSet(stocks.keySet());
+    }
+
+    /**
+     * Units not held by any reservation.
+     */
+    public long available(UUID productId) {
+        StripedStock stock = stocks.get(productId);
+        return stock != null ? stock.sum() : 0;
+    }
+
+    /**
+     * Takes all quantities or nothing; returns null when a product does not have enough units.
+     * Products are taken in the same id order as their rows are locked, so two reservations never
+     * hold each other's units back.
+     */
+    public Reservation reserve(Map<UUID, Integer> quantities) {
+        SortedMap<UUID, Integer> sorted = new TreeMap<>(Comparator.comparing(UUID::toString));
+        sorted.putAll(quantities);
+        List<Map.Entry<UUID, Integer>> taken = new ArrayList<>(sorted.size());
+
+        for (Map.Entry<UUID, Integer> item : sorted.entrySet()) {
+            StripedStock stock = stocks.get(item.getKey());
+            if (stock == null) {
+                throw new IllegalArgumentException("Product is not tracked: " + item.getKey());
+            }
+            if (item.getValue() <= 0 || !stock.tryTake(item.getValue())) {
+                taken.forEach(entry -> stocks.get(entry.getKey()).put(entry.getValue()));
+                return null;
+            }
+            taken.add(item);
+        }
+
+        Reservation reservation = new Reservation(reservationIds.incrementAndGet(),
+                Collections.unmodifiableMap(sorted), clock.getAsLong() + ttlNanos);
+        active.put(reservation.id, reservation);
+        return reservation;
+    }
+
+    /**
+     * Claims the reservation for a commit; false when it already expired or was released.
+     */
+    public boolean confirm(Reservation reservation) {
+        if (!reservation.state.compareAndSet(State.ACTIVE, State.CONFIRMED)) {
+            return false;
+        }
+        active.remove(reservation.id);
+        return true;
+    }
+
+    /**
+     * Makes a confirmed reservation final; its units are sold.
+     */
+    public boolean commit(Reservation reservation) {
+        return reservation.state.compareAndSet(State.CONFIRMED, State.COMMITTED);
+    }
+
+    /**
+     * Gives the units of an active or confirmed reservation back.
+     */
+    public void release(Reservation reservation) {
+        if (reservation.state.compareAndSet(State.ACTIVE, State.RELEASED)
+                || reservation.state.compareAndSet(State.CONFIRMED, State.RELEASED)) {
+            active.remove(reservation.id);
+            giveBack(reservation);
+        }
+    }
+
+    /**
+     * Returns the units of reservations past their deadline; returns how many expired.
+     */
+    public int expire() {
+        long now = clock.getAsLong();
+        int expired = 0;
+        for (Reservation reservation : active.values()) {
+            if (now - reservation.deadline >= 0 && reservation.state.compareAndSet(State.ACTIVE, State.EXPIRED)) {
+                active.remove(reservation.id);
+                giveBack(reservation);
+                expired++;
+            }
+        }
+        return expired;
+    }
+
+    private void giveBack(Reservation reservation) {
+        reservation.quantities.forEach((productId, quantity) -> stocks.get(productId).put(quantity));
+    }
+
+    /**
+     * Stock split over stripes that sit on separate cache lines.
+     */
+    static final class StripedStock {
+        // 8 longs = 64 bytes between two stripes
+        private static final int PADDING = 8;
+
+        private final int stripes;
+        private final AtomicLongArray cells;
+
+        StripedStock(int stripes, long initial) {
+            this.stripes = stripes;
+            this.cells = new AtomicLongArray(stripes * PADDING);
+            for (int i = 0; i < stripes; i++) {
+                cells.set(i * PADDING, initial / stripes + (i < initial % stripes ? 1 : 0));
+            }
+        }
+
+        boolean tryTake(long quantity) {
+            int home = ThreadLocalRandom.current().nextInt(stripes);
+
+            // Usually one stripe covers the whole amount
+            for (int i = 0; i < stripes; i++) {
+                int cell = ((home + i) % stripes) * PADDING;
+                long value = cells.get(cell);
+                while (value >= quantity) {
+                    if (cells.compareAndSet(cell, value, value - quantity)) {
+                        return true;
+                    }
+                    value = cells.get(cell);
+                }
+            }
+
+            // Otherwise gather it from several stripes, undoing everything if it still falls short
+            long[] taken = new long[stripes];
+            long remaining = quantity;
+            for (int i = 0; i < stripes && remaining > 0; i++) {
+                int stripe = (home + i) % stripes;
+                int cell = stripe * PADDING;
+                long value = cells.get(cell);
+                while (value > 0) {
+                    long take = Math.min(value, remaining);
+                    if (cells.compareAndSet(cell, value, value - take)) {
+                        taken[stripe] = take;
+                        remaining -= take;
+                        break;
+                    }
+                    value = cells.get(cell);
+                }
+            }
+
+            if (remaining == 0) {
+                return true;
+            }
+            for (int stripe = 0; stripe < stripes; stripe++) {
+                if (taken[stripe] > 0) {
+                    cells.addAndGet(stripe * PADDING, taken[stripe]);
+                }
+            }
+            return false;
+        }
+
+        void put(long quantity) {
+            cells.addAndGet(ThreadLocalRandom.current().nextInt(stripes) * PADDING, quantity);
+        }
+
+        long takeAll() {
+            long taken = 0;
+            for (int i = 0; i < stripes; i++) {
+                taken += cells.getAndSet(i * PADDING, 0);
+            }
+            return taken;
+        }
+
+        long sum() {
+            long sum = 0;
+            for (int i = 0; i < stripes; i++) {
+                sum += cells.get(i * PADDING);
+            }
+            return sum;
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package vn.fruit.anna.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import vn.fruit.anna.event.ProductChangedEvent;
+import vn.fruit.anna.model.OrderItem;
+import vn.fruit.anna.repository.ProductRepository;
+
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Optional in-memory stock for flash-sale products, so their orders stop queueing on one row lock.
+ *
+ * Each instance leases chunks of {@code order.reservation.lease-size} units of the products listed
+ * in {@code order.reservation.hot-products}, taking them off the row with a conditional decrement,
+ * and sells only what it has leased from a {@link StockReservationEngine}. Orders reserve their
+ * units there instead of updating the row; the reservation is confirmed just before the order
+ * commits and returned if it rolls back or outlives its TTL. Unsold units go back to the row on
+ * shutdown.
+ *
+ * The row therefore only holds the units no instance has leased, so several instances can never
+ * sell the same unit. A crash loses the unsold part of its leases: the shop undersells until the
+ * stock is corrected, but never oversells. For the same reason the stock of a hot product cannot be
+ * set from the admin form; take it off the list and restart to correct it. Leasing and reaping run on their own thread, so they
+ * never wait behind the application's other scheduled jobs.
+ */
+@Service
+@Slf4j
+public class StockReservationService {
+
+    private static final String LEASE_STOCK = "UPDATE product SET stock = stock - ?, version = version + 1 WHERE id = ? AND stock >= ?";
+    private static final String RETURN_STOCK = "UPDATE product SET stock = stock + ?, version = version + 1 WHERE id = ?";
+
+    private final boolean enabled;
+    private final Set<UUID> hotProducts;
+    private final int leaseSize;
+    private final long refillIntervalMs;
+    private final long reapIntervalMs;
+    private final StockReservationEngine engine;
+
+    private final ProductRepository productRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final AtomicBoolean refillRequested = new AtomicBoolean();
+    private final AtomicBoolean stockChanged = new AtomicBoolean();
+    private ScheduledExecutorService scheduler;
+
+    public StockReservationService(@Value("${order.reservation.enabled}") boolean enabled,
+                                   @Value("${order.reservation.hot-products:}") Set<UUID> hotProducts,
+                                   @Value("${order.reservation.stripes}") int stripes,
+                                   @Value("${order.reservation.ttl-ms}") long ttlMs,
+                                   @Value("${order.reservation.reap-interval-ms}") long reapIntervalMs,
+                                   @Value("${order.reservation.lease-size}") int leaseSize,
+                                   @Value("${order.reservation.refill-interval-ms}") long refillIntervalMs,
+                                   ProductRepository productRepository,
+                                   JdbcTemplate jdbcTemplate,
+                                   TransactionTemplate transactionTemplate,
+                                   ApplicationEventPublisher eventPublisher) {
+        this.enabled = enabled;
+        this.hotProducts = hotProducts;
+        this.leaseSize = leaseSize;
+        this.refillIntervalMs = refillIntervalMs;
+        this.reapIntervalMs = reapIntervalMs;
+        this.engine = new StockReservationEngine(stripes, TimeUnit.MILLISECONDS.toNanos(ttlMs), System::nanoTime);
+        this.productRepository = productRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.eventPublisher = eventPublisher;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startLeasing() {
+        if (!enabled || hotProducts.isEmpty()) {
+            return;
+        }
+
+        // Nothing is sold from memory until the first lease
+        for (Object[] row : productRepository.findStocksByIds(hotProducts)) {
+            engine.track((UUID) row[0], 0);
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("stock-reservation").factory());
+        scheduler.scheduleWithFixedDelay(this::refill, 0, refillIntervalMs, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::expireReservations, reapIntervalMs, reapIntervalMs, TimeUnit.MILLISECONDS);
+        log.info("Selling {} hot products from leases of {} units", engine.trackedProducts().size(), leaseSize);
+    }
+
+    public boolean isHot(UUID productId) {
+        return enabled && engine.isTracked(productId);
+    }
+
+    /**
+     * Stock shown in the shop for a hot product: what is left on its row plus what this instance
+     * has not sold yet.
+     */
+    public int shownStock(UUID productId, Integer rowStock) {
+        return (int) ((rowStock != null ? rowStock : 0) + engine.available(productId));
+    }
+
+    /**
+     * Reserves the units of hot products and returns the order items whose stock is still
+     * updated in the database. Must run inside the order transaction.
+     */
+    public List<OrderItem> reserve(List<OrderItem> orderItems) {
+        if (!enabled) {
+            return orderItems;
+        }
+
+        Map<UUID, Integer> hotQuantities = new HashMap<>();
+        Set<String> hotNames = new LinkedHashSet<>();
+        List<OrderItem> databaseItems = new ArrayList<>();
+        for (OrderItem item : orderItems) {
+            if (engine.isTracked(item.getProductId())) {
+                hotQuantities.merge(item.getProductId(), item.getQuantity(), Integer::sum);
+                hotNames.add(item.getProductName());
+            } else {
+                databaseItems.add(item);
+            }
+        }
+        if (hotQuantities.isEmpty()) {
+            return databaseItems;
+        }
+
+        StockReservationEngine.Reservation reservation = engine.reserve(hotQuantities);
+        if (reservation == null) {
+            // The row may still have units this instance has not leased yet
+            requestRefill();
+            throw new IllegalArgumentException("Not enough stock for product: " + String.join(", ", hotNames));
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                // Failing here rolls the order back instead of selling units the reaper returned
+                if (!engine.confirm(reservation)) {
+                    throw new IllegalStateException("Stock reservation expired before the order was saved");
+                }
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    engine.commit(reservation);
+                    stockChanged.set(true);
+                } else {
+                    engine.release(reservation);
+                }
+            }
+        });
+        return databaseItems;
+    }
+
+    private void requestRefill() {
+        if (refillRequested.compareAndSet(false, true)) {
+            try {
+                scheduler.execute(this::refill);
+            } catch (RejectedExecutionException e) {
+                // Shutting down
+                refillRequested.set(false);
+            }
+        }
+    }
+
+    // Runs on the reservation thread only; an exception would cancel the schedule, so none escapes
+    private void refill() {
+        refillRequested.set(false);
+        try {
+            boolean leased = false;
+            for (UUID productId : engine.trackedProducts()) {
+                if (engine.available(productId) < leaseSize) {
+                    long units = lease(productId);
+                    if (units > 0) {
+                        engine.add(productId, units);
+                        leased = true;
+                    }
+                }
+            }
+
+            if (leased || stockChanged.getAndSet(false)) {
+                publishStock();
+            }
+        } catch (RuntimeException e) {
+            log.warn("Leasing stock of hot products failed, retrying on the next refill: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Takes a full lease off the row, or whatever is left when the row has less; returns the units taken.
+     */
+    private long lease(UUID productId) {
+        return transactionTemplate.execute(status -> {
+            String id = productId.toString();
+            if (jdbcTemplate.update(LEASE_STOCK, leaseSize, id, leaseSize) == 1) {
+                return (long) leaseSize;
+            }
+
+            // The condition still guards against another instance taking the rest first
+            Integer remaining = jdbcTemplate.queryForObject("SELECT stock FROM product WHERE id = ?", Integer.class, id);
+            if (remaining == null || remaining <= 0) {
+                return 0L;
+            }
+            return jdbcTemplate.update(LEASE_STOCK, remaining, id, remaining) == 1 ? (long) remaining : 0L;
+        });
+    }
+
+    private void publishStock() {
+        Map<UUID, ProductChangedEvent.StockLevel> stocks = new HashMap<>();
+        for (Object[] row : productRepository.findStocksByIds(engine.trackedProducts())) {
+            UUID productId = (UUID) row[0];
+            stocks.put(productId, new ProductChangedEvent.StockLevel(shownStock(productId, (Integer) row[1]), (Long) row[2]));
+        }
+        eventPublisher.publishEvent(ProductChangedEvent.stockChanged(stocks));
+    }
+
+    private void expireReservations() {
+        int expired = engine.expire();
+        if (expired > 0) {
+            log.warn("Returned the stock of {} expired reservations", expired);
+        }
+    }
+
+    /**
+     * Puts the unsold part of every lease back on its row. Units still reserved by orders that have
+     * not finished are left out, so they may be lost, but never sold twice.
+     */
+    @PreDestroy
+    public void returnLeases() throws InterruptedException {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdownNow();
+        scheduler.awaitTermination(10, TimeUnit.SECONDS);
+
+        // Same row order as order transactions, which bind ids as strings
+        SortedMap<String, Long> unsold = new TreeMap<>();
+        for (UUID productId : engine.trackedProducts()) {
+            long units = engine.surrender(productId);
+            if (units > 0) {
+                unsold.put(productId.toString(), units);
+            }
+        }
+        if (unsold.isEmpty()) {
+            return;
+        }
+
+        List<Map.Entry<String, Long>> rows = new ArrayList<>(unsold.entrySet());
+        try {
+            transactionTemplate.executeWithoutResult(status ->
+                    jdbcTemplate.batchUpdate(RETURN_STOCK, rows, rows.size(), (statement, row) -> {
+                        statement.setLong(1, row.getValue());
+                        statement.setString(2, row.getKey());
+                    }));
+        } catch (RuntimeException e) {
+            log.error("Could not return unsold leased stock {}: {}", unsold, e.getMessage());
+        }
+    }
+}
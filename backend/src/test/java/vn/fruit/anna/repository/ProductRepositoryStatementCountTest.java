@@ -0,0 +1,125 @@
+package vn.fruit.anna.repository;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import vn.fruit.anna.model.Category;
+import vn.fruit.anna.model.Product;
+import vn.fruit.anna.model.ProductImage;
+import vn.fruit.anna.service.ResourceVersionService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The storefront list endpoints must cost the same number of statements for one product as for
+ * many: one for the products and one for all of their images, whatever the result size.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Import(ResourceVersionService.class)
+class ProductRepositoryStatementCountTest {
+
+	private static final int MANY_PRODUCTS = 40;
+	private static final int IMAGES_PER_PRODUCT = 3;
+
+	@Autowired
+	private ProductRepository productRepository;
+
+	@Autowired
+	private TestEntityManager entityManager;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	private Category category;
+	private int persisted;
+
+	@BeforeEach
+	void createCategory() {
+		category = entityManager.persist(Category.builder().name("Trái cây nhập khẩu").build());
+	}
+
+	// ProductService.getAllProduct when the catalog is not loaded
+	@Test
+	void getAllProduct() {
+		assertConstantStatementCount(ids -> {
+			productRepository.findAllResponsesWithThumbnail();
+			productRepository.findAllImageUrls();
+		});
+	}
+
+	// ProductService.getRandom12Products for ids the catalog does not know about
+	@Test
+	void getRandom12Products() {
+		assertConstantStatementCount(ids -> {
+			List<UUID> sample = ids.subList(0, Math.min(12, ids.size()));
+			productRepository.findResponsesByIds(sample);
+			productRepository.findImageUrlsByProductIds(sample);
+		});
+	}
+
+	@Test
+	void get8NewestProducts() {
+		assertConstantStatementCount(ids -> {
+			List<UUID> newestIds = productRepository.findNewestResponses(PageRequest.of(0, 8)).stream()
+					.map(product -> product.getId())
+					.toList();
+			productRepository.findImageUrlsByProductIds(newestIds);
+		});
+	}
+
+	private void assertConstantStatementCount(Consumer<List<UUID>> endpoint) {
+		persistProducts(1);
+		long withOneProduct = countStatements(endpoint);
+
+		persistProducts(MANY_PRODUCTS - 1);
+		long withManyProducts = countStatements(endpoint);
+
+		assertEquals(2, withOneProduct);
+		assertEquals(withOneProduct, withManyProducts);
+	}
+
+	private long countStatements(Consumer<List<UUID>> endpoint) {
+		List<UUID> ids = productRepository.findAllIds();
+		entityManager.clear();
+
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+		endpoint.accept(ids);
+		return statistics.getPrepareStatementCount();
+	}
+
+	private void persistProducts(int count) {
+		for (int i = 0; i < count; i++) {
+			int number = persisted++;
+			Product product = entityManager.persist(Product.builder()
+					.name("Product " + number)
+					.thumbnailImage("https://res.cloudinary.com/demo/image/upload/product-" + number + ".jpg")
+					.sellingPrice(50000.0)
+					.stock(100)
+					.category(category)
+					.productImages(new ArrayList<>())
+					.build());
+
+			for (int j = 0; j < IMAGES_PER_PRODUCT; j++) {
+				entityManager.persist(ProductImage.builder()
+						.image("https://res.cloudinary.com/demo/image/upload/product-" + number + "-" + j + ".jpg")
+						.product(product)
+						.build());
+			}
+		}
+		entityManager.flush();
+	}
+
+}
@@ -0,0 +1,94 @@
+package vn.fruit.anna.repository.specification;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import vn.fruit.anna.dto.response.CursorSliceResponse;
+import vn.fruit.anna.model.Category;
+import vn.fruit.anna.model.Product;
+import vn.fruit.anna.repository.ProductRepository;
+import vn.fruit.anna.service.ResourceVersionService;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Pages through products sorted by category name, where some products have no category.
+ */
+@DataJpaTest
+@Import(ResourceVersionService.class)
+class KeysetSpecificationTest {
+
+	private static final int PAGE_SIZE = 2;
+
+	@Autowired
+	private ProductRepository productRepository;
+
+	@Autowired
+	private TestEntityManager entityManager;
+
+	private final Map<UUID, String> categoryNames = new HashMap<>();
+
+	@BeforeEach
+	void persistProducts() {
+		Category apples = entityManager.persist(Category.builder().name("Apples").build());
+		Category citrus = entityManager.persist(Category.builder().name("Citrus").build());
+
+		// Nulls both between and at the ends of the slices
+		List<Category> categories = Arrays.asList(apples, null, citrus, null, apples, citrus, null);
+		for (int i = 0; i < categories.size(); i++) {
+			Category category = categories.get(i);
+			Product product = entityManager.persist(Product.builder()
+					.name("Product " + i)
+					.sellingPrice(50000.0)
+					.stock(100)
+					.category(category)
+					.productImages(new ArrayList<>())
+					.build());
+			categoryNames.put(product.getId(), category != null ? category.getName() : null);
+		}
+		entityManager.flush();
+		entityManager.clear();
+	}
+
+	@Test
+	void ascendingSlicesStartWithProductsWithoutCategory() {
+		assertEquals(expected(Sort.Direction.ASC), pageThrough(Sort.Direction.ASC));
+	}
+
+	@Test
+	void descendingSlicesEndWithProductsWithoutCategory() {
+		assertEquals(expected(Sort.Direction.DESC), pageThrough(Sort.Direction.DESC));
+	}
+
+	private List<UUID> pageThrough(Sort.Direction direction) {
+		Specification<Product> all = (root, query, criteriaBuilder) -> criteriaBuilder.conjunction();
+
+		List<UUID> ids = new ArrayList<>();
+		String after = null;
+		CursorSliceResponse<UUID> slice;
+		do {
+			slice = KeysetSpecification.findSlice(productRepository, all, "category.name", direction, after, PAGE_SIZE, Product::getId);
+			ids.addAll(slice.getContent());
+			after = slice.getNextCursor();
+		} while (slice.isHasNext());
+		return ids;
+	}
+
+	// Ids are stored as strings, so ties are broken in string order
+	private List<UUID> expected(Sort.Direction direction) {
+		Comparator<UUID> byCategoryThenId = Comparator
+				.comparing((UUID id) -> categoryNames.get(id), Comparator.nullsFirst(Comparator.naturalOrder()))
+				.thenComparing(UUID::toString);
+		return categoryNames.keySet().stream()
+				.sorted(direction.isAscending() ? byCategoryThenId : byCategoryThenId.reversed())
+				.toList();
+	}
+
+}
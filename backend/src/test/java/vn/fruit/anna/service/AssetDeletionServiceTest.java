@@ -0,0 +1,210 @@
+package vn.fruit.anna.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import vn.fruit.anna.enums.AssetDeletionStatus;
+import vn.fruit.anna.model.AssetDeletion;
+import vn.fruit.anna.repository.AssetDeletionRepository;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * Runs the deletion worker against the real queue table and a stub image store.
+ */
+@DataJpaTest
+@Import(ResourceVersionService.class)
+// The worker commits its own claims and results
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class AssetDeletionServiceTest {
+
+	private static final long RETRY_DELAY_MS = 60_000;
+	private static final long MAX_RETRY_DELAY_MS = 90_000;
+
+	@Autowired
+	private AssetDeletionRepository assetDeletionRepository;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	private final StubImageStore imageStore = new StubImageStore();
+	private final MediaAssetService mediaAssetService = mock(MediaAssetService.class);
+	private AssetDeletionService assetDeletionService;
+
+	@BeforeEach
+	void createService() {
+		// Unless a test says otherwise, every image is only referenced by its entry
+		when(mediaAssetService.release(anyString())).thenAnswer(invocation -> List.of(invocation.getArgument(0, String.class)));
+
+		assetDeletionService = new AssetDeletionService(assetDeletionRepository, imageStore, mediaAssetService,
+				new TransactionTemplate(transactionManager));
+		configure(10, 3);
+	}
+
+	@AfterEach
+	void clearQueue() {
+		assetDeletionRepository.deleteAll();
+	}
+
+	@Test
+	void deletesInBatchesOfTheConfiguredSize() {
+		configure(3, 3);
+		assetDeletionService.enqueue(urls("a", "b", "c", "d", "e", "f", "g"));
+
+		assetDeletionService.drain();
+
+		assertEquals(List.of(3, 3, 1), imageStore.calls.stream().map(Collection::size).toList());
+		assertEquals(Set.of("a", "b", "c", "d", "e", "f", "g"), imageStore.deleted);
+		assertEquals(0, assetDeletionRepository.count());
+	}
+
+	@Test
+	void retriesOnlyTheKeysTheStoreDidNotDelete() {
+		imageStore.refused.add("b");
+		assetDeletionService.enqueue(urls("a", "b", "c"));
+
+		long startedAt = System.currentTimeMillis();
+		assetDeletionService.drain();
+
+		AssetDeletion remaining = single();
+		assertEquals("stub://b", remaining.getUrl());
+		assertEquals(AssetDeletionStatus.PENDING, remaining.getStatus());
+		assertEquals(1, remaining.getAttempts());
+		assertTrue(remaining.getLastError().contains("b"));
+		assertTrue(remaining.getNextAttemptAt().getTime() >= startedAt + RETRY_DELAY_MS);
+	}
+
+	@Test
+	void backsOffAndParksAfterMaxAttempts() {
+		imageStore.failing = true;
+		assetDeletionService.enqueue(urls("a"));
+
+		long startedAt = System.currentTimeMillis();
+		assetDeletionService.drain();
+		AssetDeletion entry = single();
+		assertEquals(1, entry.getAttempts());
+		long firstDelay = entry.getNextAttemptAt().getTime() - startedAt;
+		assertTrue(firstDelay >= RETRY_DELAY_MS && firstDelay < MAX_RETRY_DELAY_MS, "first delay " + firstDelay);
+
+		// Not due yet: a poll leaves it alone
+		assetDeletionService.drain();
+		assertEquals(1, imageStore.calls.size());
+
+		makeDue();
+		startedAt = System.currentTimeMillis();
+		assetDeletionService.drain();
+		entry = single();
+		assertEquals(2, entry.getAttempts());
+		long secondDelay = entry.getNextAttemptAt().getTime() - startedAt;
+		// Doubled, then capped
+		assertTrue(secondDelay >= MAX_RETRY_DELAY_MS && secondDelay < 2 * RETRY_DELAY_MS, "second delay " + secondDelay);
+
+		makeDue();
+		assetDeletionService.drain();
+		entry = single();
+		assertEquals(3, entry.getAttempts());
+		assertEquals(AssetDeletionStatus.PARKED, entry.getStatus());
+
+		makeDue();
+		assetDeletionService.drain();
+		assertEquals(3, imageStore.calls.size());
+	}
+
+	@Test
+	void stillReferencedImageIsDroppedInsteadOfDeleted() {
+		when(mediaAssetService.release("stub://shared")).thenReturn(List.of());
+		assetDeletionService.enqueue(urls("shared"));
+
+		assetDeletionService.drain();
+
+		assertTrue(imageStore.calls.isEmpty());
+		assertEquals(0, assetDeletionRepository.count());
+	}
+
+	@Test
+	void freedVariantsAreQueuedAlreadyReleased() {
+		when(mediaAssetService.release("stub://photo")).thenReturn(List.of("stub://photo", "stub://photo-card"));
+		assetDeletionService.enqueue(urls("photo"));
+
+		assetDeletionService.drain();
+		assertEquals(Set.of("photo"), imageStore.deleted);
+		AssetDeletion variant = single();
+		assertEquals("stub://photo-card", variant.getUrl());
+		assertTrue(variant.isReleased());
+
+		assetDeletionService.drain();
+		assertEquals(Set.of("photo", "photo-card"), imageStore.deleted);
+		assertEquals(0, assetDeletionRepository.count());
+		verify(mediaAssetService, never()).release("stub://photo-card");
+	}
+
+	private void configure(int batchSize, int maxAttempts) {
+		ReflectionTestUtils.setField(assetDeletionService, "batchSize", batchSize);
+		ReflectionTestUtils.setField(assetDeletionService, "leaseMs", 600_000L);
+		ReflectionTestUtils.setField(assetDeletionService, "maxAttempts", maxAttempts);
+		ReflectionTestUtils.setField(assetDeletionService, "retryDelayMs", RETRY_DELAY_MS);
+		ReflectionTestUtils.setField(assetDeletionService, "maxRetryDelayMs", MAX_RETRY_DELAY_MS);
+	}
+
+	private AssetDeletion single() {
+		List<AssetDeletion> entries = assetDeletionRepository.findAll();
+		assertEquals(1, entries.size(), "queued entries");
+		return entries.get(0);
+	}
+
+	private void makeDue() {
+		List<AssetDeletion> entries = assetDeletionRepository.findAll();
+		entries.forEach(entry -> entry.setNextAttemptAt(new Date(0)));
+		assetDeletionRepository.saveAll(entries);
+	}
+
+	private static List<String> urls(String... keys) {
+		return Arrays.stream(keys).map(key -> "stub://" + key).toList();
+	}
+
+	private static final class StubImageStore implements ImageStore {
+
+		private final List<Collection<String>> calls = new ArrayList<>();
+		private final Set<String> deleted = new HashSet<>();
+		private final Set<String> refused = new HashSet<>();
+		private boolean failing;
+
+		@Override
+		public String store(File file) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public String keyOf(String url) {
+			return url.startsWith("stub://") ? url.substring("stub://".length()) : null;
+		}
+
+		@Override
+		public Set<String> delete(Collection<String> keys) throws IOException {
+			calls.add(List.copyOf(keys));
+			if (failing) {
+				throw new IOException("store unavailable");
+			}
+
+			Set<String> gone = new HashSet<>(keys);
+			gone.removeAll(refused);
+			deleted.addAll(gone);
+			return gone;
+		}
+	}
+
+}
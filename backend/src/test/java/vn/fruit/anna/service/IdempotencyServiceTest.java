@@ -0,0 +1,166 @@
+package vn.fruit.anna.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import vn.fruit.anna.dto.response.OrderResponse;
+import vn.fruit.anna.exception.DataInUseException;
+import vn.fruit.anna.exception.ServiceUnavailableException;
+import vn.fruit.anna.model.IdempotentRequest;
+import vn.fruit.anna.repository.IdempotentRequestRepository;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class IdempotencyServiceTest {
+
+	private static final String KEY = "checkout-7f3a";
+	private static final Map<String, Object> REQUEST = Map.of("customerName", "Lan", "quantity", 2);
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	private IdempotentRequestRepository repository;
+
+	@BeforeEach
+	void createRepository() {
+		repository = mock(IdempotentRequestRepository.class);
+		when(repository.findByIdempotencyKeyAndExpiresAtAfter(anyString(), any())).thenReturn(Optional.empty());
+	}
+
+	@Test
+	void storedKeyIsReplayedOnAnotherInstance() {
+		IdempotencyService first = service();
+		OrderResponse placed = order();
+		assertSame(placed, first.execute(KEY, REQUEST, () -> {
+			first.store(KEY, REQUEST, placed);
+			return placed;
+		}));
+
+		// What the first instance inserted is all the second one sees
+		ArgumentCaptor<String> fingerprint = ArgumentCaptor.forClass(String.class);
+		ArgumentCaptor<String> response = ArgumentCaptor.forClass(String.class);
+		ArgumentCaptor<Date> expiresAt = ArgumentCaptor.forClass(Date.class);
+		verify(repository).insert(eq(KEY), fingerprint.capture(), response.capture(), expiresAt.capture());
+		when(repository.findByIdempotencyKeyAndExpiresAtAfter(eq(KEY), any())).thenReturn(Optional.of(IdempotentRequest.builder()
+				.idempotencyKey(KEY)
+				.fingerprint(fingerprint.getValue())
+				.response(response.getValue())
+				.expiresAt(expiresAt.getValue())
+				.build()));
+
+		OrderResponse replayed = service().execute(KEY, REQUEST, () -> fail("placed twice"));
+		assertEquals(placed.getId(), replayed.getId());
+	}
+
+	@Test
+	void recentKeyIsReplayedWithoutTheTable() {
+		IdempotencyService service = service();
+		OrderResponse placed = order();
+		service.execute(KEY, REQUEST, () -> placed);
+
+		assertSame(placed, service.execute(KEY, REQUEST, () -> fail("placed twice")));
+		verify(repository, times(1)).findByIdempotencyKeyAndExpiresAtAfter(eq(KEY), any());
+	}
+
+	@Test
+	void keyReusedForAnotherRequestIsRejected() {
+		IdempotencyService service = service();
+		service.execute(KEY, REQUEST, this::order);
+
+		assertThrows(DataInUseException.class, () -> service.execute(KEY, Map.of("customerName", "Hoa"), this::order));
+	}
+
+	@Test
+	void concurrentDuplicatesShareOnePlacement() throws Exception {
+		IdempotencyService service = service();
+		CountDownLatch placing = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger placements = new AtomicInteger();
+		OrderResponse placed = order();
+
+		int requests = 8;
+		ExecutorService executor = Executors.newFixedThreadPool(requests);
+		try {
+			List<Future<OrderResponse>> results = new ArrayList<>();
+			for (int i = 0; i < requests; i++) {
+				results.add(executor.submit(() -> service.execute(KEY, REQUEST, () -> {
+					placements.incrementAndGet();
+					placing.countDown();
+					await(release);
+					return placed;
+				})));
+			}
+
+			assertTrue(placing.await(10, TimeUnit.SECONDS));
+			// Let every duplicate reach the service while the first is still placing
+			Thread.sleep(200);
+			release.countDown();
+
+			for (Future<OrderResponse> result : results) {
+				assertSame(placed, result.get(10, TimeUnit.SECONDS));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		assertEquals(1, placements.get());
+	}
+
+	@Test
+	void interruptedDuplicateIsUnavailableNotBadRequest() throws Exception {
+		IdempotencyService service = service();
+		CountDownLatch placing = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+
+		Thread firstRequest = Thread.ofPlatform().start(() -> service.execute(KEY, REQUEST, () -> {
+			placing.countDown();
+			await(release);
+			return order();
+		}));
+		assertTrue(placing.await(10, TimeUnit.SECONDS));
+
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		Thread duplicate = Thread.ofPlatform().start(() -> {
+			try {
+				service.execute(KEY, REQUEST, this::order);
+			} catch (Throwable e) {
+				failure.set(e);
+			}
+		});
+		Thread.sleep(200);
+		duplicate.interrupt();
+		duplicate.join(10_000);
+
+		release.countDown();
+		firstRequest.join(10_000);
+		assertInstanceOf(ServiceUnavailableException.class, failure.get());
+	}
+
+	private IdempotencyService service() {
+		return new IdempotencyService(repository, objectMapper, 86_400_000, 100);
+	}
+
+	private OrderResponse order() {
+		return OrderResponse.builder()
+				.id(UUID.randomUUID())
+				.totalPrice(100000.0)
+				.customerName("Lan")
+				.createdAt(new Date())
+				.items(List.of())
+				.build();
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			assertTrue(latch.await(10, TimeUnit.SECONDS));
+		} catch (InterruptedException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
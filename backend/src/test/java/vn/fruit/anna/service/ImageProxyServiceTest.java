@@ -0,0 +1,164 @@
+package vn.fruit.anna.service;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the proxy against a stub origin on localhost.
+ */
+class ImageProxyServiceTest {
+
+	private static final String BASE_URL = "http://localhost:8080/api/image-proxy/";
+	private static final int IMAGE_BYTES = 1000;
+
+	@TempDir
+	Path cacheDir;
+
+	private HttpServer origin;
+	private final Map<String, AtomicInteger> hits = new ConcurrentHashMap<>();
+	private volatile CountDownLatch originGate = new CountDownLatch(0);
+
+	@BeforeEach
+	void startOrigin() throws IOException {
+		origin = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		origin.setExecutor(Executors.newCachedThreadPool());
+		origin.createContext("/", exchange -> {
+			hits.computeIfAbsent(exchange.getRequestURI().getPath(), path -> new AtomicInteger()).incrementAndGet();
+			try {
+				originGate.await(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+
+			byte[] body = new byte[IMAGE_BYTES];
+			Arrays.fill(body, (byte) exchange.getRequestURI().getPath().hashCode());
+			exchange.getResponseHeaders().set("Content-Type", "image/png");
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream output = exchange.getResponseBody()) {
+				output.write(body);
+			}
+		});
+		origin.start();
+	}
+
+	@AfterEach
+	void stopOrigin() {
+		origin.stop(0);
+	}
+
+	@Test
+	void concurrentMissesShareOneFetch() throws Exception {
+		ImageProxyService proxy = proxy(10 * IMAGE_BYTES, 0);
+		String token = token(proxy, "/cold.png");
+		originGate = new CountDownLatch(1);
+
+		int requests = 8;
+		ExecutorService executor = Executors.newFixedThreadPool(requests);
+		try {
+			List<Future<ImageProxyService.CachedImage>> results = new ArrayList<>();
+			for (int i = 0; i < requests; i++) {
+				results.add(executor.submit(() -> proxy.get(token)));
+			}
+
+			// Let every request reach the proxy before the origin answers
+			Thread.sleep(200);
+			originGate.countDown();
+
+			Set<Path> files = new HashSet<>();
+			for (Future<ImageProxyService.CachedImage> result : results) {
+				files.add(result.get(10, TimeUnit.SECONDS).file());
+			}
+			assertEquals(1, files.size());
+		} finally {
+			executor.shutdownNow();
+		}
+		assertEquals(1, hits.get("/cold.png").get());
+	}
+
+	@Test
+	void etagIsTheUrlHashAndSurvivesRestart() throws Exception {
+		ImageProxyService proxy = proxy(10 * IMAGE_BYTES, 0);
+		String token = token(proxy, "/logo.png");
+
+		ImageProxyService.CachedImage fetched = proxy.get(token);
+		assertTrue(fetched.etag().matches("\"[0-9a-f]{64}\""));
+		assertEquals("image/png", fetched.contentType());
+		assertEquals(IMAGE_BYTES, Files.size(fetched.file()));
+
+		ImageProxyService restarted = proxy(10 * IMAGE_BYTES, 0);
+		ImageProxyService.CachedImage cached = restarted.get(token);
+		assertEquals(fetched.etag(), cached.etag());
+		assertEquals(fetched.file(), cached.file());
+		assertEquals(1, hits.get("/logo.png").get());
+	}
+
+	@Test
+	void evictedFilesOutliveTheirEntryUntilTheGracePeriodEnds() throws Exception {
+		ImageProxyService proxy = proxy(2 * IMAGE_BYTES, 60_000);
+		ImageProxyService.CachedImage first = proxy.get(token(proxy, "/first.png"));
+		proxy.get(token(proxy, "/second.png"));
+		proxy.get(token(proxy, "/third.png"));
+
+		// A request that looked the first image up before the eviction can still open it
+		proxy.deleteEvicted();
+		assertTrue(Files.exists(first.file()));
+
+		proxy.get(token(proxy, "/first.png"));
+		assertEquals(2, hits.get("/first.png").get());
+	}
+
+	@Test
+	void evictedFilesAreDeletedAfterTheGracePeriod() throws Exception {
+		ImageProxyService proxy = proxy(2 * IMAGE_BYTES, 0);
+		ImageProxyService.CachedImage first = proxy.get(token(proxy, "/first.png"));
+		ImageProxyService.CachedImage second = proxy.get(token(proxy, "/second.png"));
+		ImageProxyService.CachedImage third = proxy.get(token(proxy, "/third.png"));
+
+		proxy.deleteEvicted();
+		assertFalse(Files.exists(first.file()));
+		assertTrue(Files.exists(second.file()));
+		assertTrue(Files.exists(third.file()));
+	}
+
+	@Test
+	void evictedImageFetchedAgainKeepsItsFile() throws Exception {
+		ImageProxyService proxy = proxy(2 * IMAGE_BYTES, 0);
+		String firstToken = token(proxy, "/first.png");
+		proxy.get(firstToken);
+		proxy.get(token(proxy, "/second.png"));
+		proxy.get(token(proxy, "/third.png"));
+
+		ImageProxyService.CachedImage refetched = proxy.get(firstToken);
+		proxy.deleteEvicted();
+		assertTrue(Files.exists(refetched.file()));
+	}
+
+	private ImageProxyService proxy(long maxCacheBytes, long evictionGraceMs) throws IOException {
+		ImageProxyService proxy = new ImageProxyService(true, BASE_URL, Set.of("127.0.0.1"), cacheDir.toString(),
+				maxCacheBytes, 10 * IMAGE_BYTES, 5000, evictionGraceMs);
+		proxy.loadCache();
+		return proxy;
+	}
+
+	private String token(ImageProxyService proxy, String path) {
+		String proxied = proxy.proxyUrl("http://127.0.0.1:" + origin.getAddress().getPort() + path);
+		assertTrue(proxied.startsWith(BASE_URL));
+		return proxied.substring(BASE_URL.length());
+	}
+
+}
@@ -0,0 +1,225 @@
+package vn.fruit.anna.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Retained heap while uploading 32 MB to 256 MB images through {@link ImageUploadService}.
+ *
+ * Each size runs in its own JVM limited to {@value #MAX_HEAP}, well below the largest upload, so a
+ * path that buffered the whole file would fail with an OutOfMemoryError. The store stub reads the
+ * staged file the way the Cloudinary client does: in chunk-size buffers above the chunked threshold,
+ * streamed below it. The reported peak leaves out the young generation, which only holds garbage.
+ *
+ * Run with {@code mvn test -Dbenchmarks=true}.
+ */
+@EnabledIfSystemProperty(named = "benchmarks", matches = "true")
+class ImageUploadHeapBenchmarkTest {
+
+	private static final String MAX_HEAP = "64m";
+	private static final long MB = 1024 * 1024;
+	private static final long[] UPLOAD_SIZES = {32 * MB, 128 * MB, 256 * MB};
+
+	// Same as media.upload in application.yml
+	private static final long CHUNKED_THRESHOLD = 20 * MB;
+	private static final int CHUNK_SIZE = (int) (6 * MB);
+
+	@Test
+	void retainedHeapStaysFlatAsTheUploadGrows() throws Exception {
+		Map<Long, Long> peakBytes = new LinkedHashMap<>();
+		for (long size : UPLOAD_SIZES) {
+			long peak = runInSmallHeap(size);
+			peakBytes.put(size, peak);
+			System.out.printf("%,5d MB upload: retained heap peak %,6d KB (-Xmx%s)%n", size / MB, peak / 1024, MAX_HEAP);
+		}
+
+		// One chunk buffer of slack; a buffered upload would grow by the difference in size
+		long smallest = peakBytes.get(UPLOAD_SIZES[0]);
+		long largest = peakBytes.get(UPLOAD_SIZES[UPLOAD_SIZES.length - 1]);
+		assertTrue(largest < smallest + CHUNK_SIZE, "retained heap grew with the upload: " + peakBytes);
+	}
+
+	private static long runInSmallHeap(long size) throws Exception {
+		String java = ProcessHandle.current().info().command().orElse("java");
+		Process process = new ProcessBuilder(java,
+				"-Xmx" + MAX_HEAP,
+				"-cp", System.getProperty("java.class.path"),
+				UploadRun.class.getName(),
+				Long.toString(size))
+				.redirectErrorStream(true)
+				.start();
+
+		String output;
+		try (InputStream input = process.getInputStream()) {
+			output = new String(input.readAllBytes(), StandardCharsets.UTF_8);
+		}
+		assertTrue(process.waitFor(5, TimeUnit.MINUTES), "upload of " + size + " bytes timed out");
+		assertEquals(0, process.exitValue(), "upload of " + size + " bytes failed:\n" + output);
+
+		return output.lines()
+				.filter(line -> line.startsWith("peak="))
+				.mapToLong(line -> Long.parseLong(line.substring("peak=".length())))
+				.findFirst()
+				.orElseThrow(() -> new AssertionError("no peak reported:\n" + output));
+	}
+
+	static final class UploadRun {
+
+		public static void main(String[] args) throws Exception {
+			long size = Long.parseLong(args[0]);
+
+			ImageOptimizer imageOptimizer = mock(ImageOptimizer.class);
+			when(imageOptimizer.placeholderAsync(any())).thenReturn(CompletableFuture.completedFuture(null));
+			ImageUploadService imageUploadService = new ImageUploadService(
+					new ChunkedStoreStub(),
+					imageOptimizer,
+					mock(AssetDeletionService.class),
+					mock(MediaAssetService.class),
+					null,
+					new SimpleMeterRegistry(),
+					16,
+					4);
+
+			System.gc();
+			List<MemoryPoolMXBean> retainedPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+					.filter(pool -> pool.getType() == MemoryType.HEAP && !pool.getName().contains("Eden"))
+					.toList();
+			retainedPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+
+			ImageUploadService.UploadedImage uploaded = imageUploadService.upload(new GeneratedMultipartFile(size));
+			if (!uploaded.url().equals("stub://" + size)) {
+				throw new AssertionError("store saw " + uploaded.url());
+			}
+
+			long peak = retainedPools.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+			System.out.println("peak=" + peak);
+		}
+	}
+
+	private static final class ChunkedStoreStub implements ImageStore {
+
+		@Override
+		public String store(File file) throws IOException {
+			long read = 0;
+			try (InputStream input = Files.newInputStream(file.toPath())) {
+				if (file.length() > CHUNKED_THRESHOLD) {
+					// uploadLarge refills one chunk-size buffer for every part it sends
+					byte[] chunk = new byte[CHUNK_SIZE];
+					int n;
+					do {
+						n = input.readNBytes(chunk, 0, chunk.length);
+						read += n;
+					} while (n == CHUNK_SIZE);
+				} else {
+					read = input.transferTo(OutputStream.nullOutputStream());
+				}
+			}
+			return "stub://" + read;
+		}
+
+		@Override
+		public String keyOf(String url) {
+			return null;
+		}
+
+		@Override
+		public Set<String> delete(Collection<String> keys) {
+			return new HashSet<>(keys);
+		}
+	}
+
+	// A part of the given size that is generated on the fly, so the test itself holds no image
+	private record GeneratedMultipartFile(long size) implements MultipartFile {
+
+		@Override
+		public String getName() {
+			return "file";
+		}
+
+		@Override
+		public String getOriginalFilename() {
+			return "large.jpg";
+		}
+
+		@Override
+		public String getContentType() {
+			return "image/jpeg";
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return size == 0;
+		}
+
+		@Override
+		public long getSize() {
+			return size;
+		}
+
+		@Override
+		public byte[] getBytes() {
+			throw new UnsupportedOperationException("the upload path must not read the part into memory");
+		}
+
+		@Override
+		public InputStream getInputStream() {
+			return new InputStream() {
+				private long remaining = size;
+
+				@Override
+				public int read() {
+					if (remaining == 0) {
+						return -1;
+					}
+					remaining--;
+					return (int) (remaining & 0xFF);
+				}
+
+				@Override
+				public int read(byte[] buffer, int offset, int length) {
+					if (remaining == 0) {
+						return -1;
+					}
+					int n = (int) Math.min(length, remaining);
+					Arrays.fill(buffer, offset, offset + n, (byte) remaining);
+					remaining -= n;
+					return n;
+				}
+			};
+		}
+
+		@Override
+		public void transferTo(File dest) throws IOException {
+			try (InputStream input = getInputStream()) {
+				Files.copy(input, dest.toPath());
+			}
+		}
+
+		@Override
+		public void transferTo(Path dest) throws IOException {
+			transferTo(dest.toFile());
+		}
+	}
+
+}
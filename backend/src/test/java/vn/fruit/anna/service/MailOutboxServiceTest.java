@@ -0,0 +1,219 @@
+package vn.fruit.anna.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import vn.fruit.anna.dto.response.OrderItemResponse;
+import vn.fruit.anna.dto.response.OrderResponse;
+import vn.fruit.anna.enums.MailOutboxStatus;
+import vn.fruit.anna.model.MailOutbox;
+import vn.fruit.anna.repository.MailOutboxRepository;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the outbox against the real queue table and an in-process SMTP server.
+ */
+@DataJpaTest
+@Import(ResourceVersionService.class)
+// The dispatcher commits its own claims and results
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class MailOutboxServiceTest {
+
+	private static final int MAX_ATTEMPTS = 2;
+
+	@RegisterExtension
+	static final GreenMailExtension SMTP = new GreenMailExtension(ServerSetupTest.SMTP);
+
+	@Autowired
+	private MailOutboxRepository mailOutboxRepository;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	private final BouncingMailSender mailSender = new BouncingMailSender();
+	private TransactionTemplate transactionTemplate;
+	private MailOutboxService mailOutboxService;
+
+	@BeforeEach
+	void createService() {
+		mailSender.setHost(ServerSetupTest.SMTP.getBindAddress());
+		mailSender.setPort(ServerSetupTest.SMTP.getPort());
+
+		MailService mailService = new MailService(mailSender);
+		ReflectionTestUtils.setField(mailService, "emailFrom", "shop@anna.test");
+
+		transactionTemplate = new TransactionTemplate(transactionManager);
+		mailOutboxService = new MailOutboxService(mailOutboxRepository, mailService, mailSender, new ObjectMapper(), transactionTemplate);
+		ReflectionTestUtils.setField(mailOutboxService, "batchSize", 50);
+		ReflectionTestUtils.setField(mailOutboxService, "leaseMs", 300_000L);
+		ReflectionTestUtils.setField(mailOutboxService, "maxAttempts", MAX_ATTEMPTS);
+		ReflectionTestUtils.setField(mailOutboxService, "retryDelayMs", 30_000L);
+		ReflectionTestUtils.setField(mailOutboxService, "maxRetryDelayMs", 3_600_000L);
+	}
+
+	@AfterEach
+	void clearQueue() {
+		mailOutboxRepository.deleteAll();
+	}
+
+	@Test
+	void rolledBackOrderIsNeverMailed() throws Exception {
+		transactionTemplate.executeWithoutResult(status -> {
+			mailOutboxService.enqueueOrderConfirmation(order("rolled-back@anna.test"));
+			status.setRollbackOnly();
+		});
+		transactionTemplate.executeWithoutResult(status ->
+				mailOutboxService.enqueueOrderConfirmation(order("committed@anna.test")));
+
+		mailOutboxService.dispatch();
+
+		assertEquals(List.of("committed@anna.test"), receivedRecipients());
+	}
+
+	@Test
+	void batchIsSentOverOneConnection() throws Exception {
+		for (int i = 0; i < 5; i++) {
+			mailOutboxService.enqueueOrderConfirmation(order("customer" + i + "@anna.test"));
+		}
+
+		mailOutboxService.dispatch();
+
+		assertEquals(1, mailSender.connections.get());
+		assertEquals(5, receivedRecipients().size());
+		assertEquals(0, mailOutboxRepository.count());
+	}
+
+	@Test
+	void onlyFailedMessagesAreRetried() throws Exception {
+		mailSender.bounced.add("bounced@anna.test");
+		mailOutboxService.enqueueOrderConfirmation(order("first@anna.test"));
+		mailOutboxService.enqueueOrderConfirmation(order("bounced@anna.test"));
+		mailOutboxService.enqueueOrderConfirmation(order("last@anna.test"));
+
+		mailOutboxService.dispatch();
+
+		assertEquals(List.of("first@anna.test", "last@anna.test"), receivedRecipients());
+		MailOutbox remaining = single();
+		assertEquals("bounced@anna.test", remaining.getRecipient());
+		assertEquals(MailOutboxStatus.PENDING, remaining.getStatus());
+		assertEquals(1, remaining.getAttempts());
+		assertTrue(remaining.getNextAttemptAt().after(new Date()));
+	}
+
+	@Test
+	void movedToDeadLettersAfterMaxAttempts() throws Exception {
+		mailSender.bounced.add("bounced@anna.test");
+		mailOutboxService.enqueueOrderConfirmation(order("bounced@anna.test"));
+
+		for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+			mailOutboxService.dispatch();
+			makeDue();
+		}
+		MailOutbox entry = single();
+		assertEquals(MailOutboxStatus.DEAD_LETTER, entry.getStatus());
+		assertEquals(MAX_ATTEMPTS, entry.getAttempts());
+
+		// Dead letters are not picked up again
+		mailOutboxService.dispatch();
+		assertEquals(MAX_ATTEMPTS, mailSender.batches.get());
+		assertTrue(receivedRecipients().isEmpty());
+	}
+
+	private MailOutbox single() {
+		List<MailOutbox> entries = mailOutboxRepository.findAll();
+		assertEquals(1, entries.size(), "queued mails");
+		return entries.get(0);
+	}
+
+	private void makeDue() {
+		List<MailOutbox> entries = mailOutboxRepository.findAll();
+		entries.forEach(entry -> entry.setNextAttemptAt(new Date(0)));
+		mailOutboxRepository.saveAll(entries);
+	}
+
+	private static List<String> receivedRecipients() throws MessagingException {
+		List<String> recipients = new ArrayList<>();
+		for (MimeMessage message : SMTP.getReceivedMessages()) {
+			recipients.add(message.getAllRecipients()[0].toString());
+		}
+		return recipients;
+	}
+
+	private static OrderResponse order(String email) {
+		return OrderResponse.builder()
+				.id(UUID.randomUUID())
+				.estimatedDeliveryDate(new Date())
+				.totalPrice(100000.0)
+				.customerName("Test customer")
+				.customerEmail(email)
+				.createdAt(new Date())
+				.items(List.of(OrderItemResponse.builder()
+						.productName("Táo Envy")
+						.quantity(2)
+						.price(100000.0)
+						.build()))
+				.build();
+	}
+
+	/**
+	 * Delivers through the test server, except to the bounced recipients, which fail the way an
+	 * SMTP server rejecting one recipient does: after the rest of the batch went out.
+	 */
+	private static final class BouncingMailSender extends JavaMailSenderImpl {
+
+		private final Set<String> bounced = new HashSet<>();
+		private final AtomicInteger connections = new AtomicInteger();
+		private final AtomicInteger batches = new AtomicInteger();
+
+		@Override
+		protected Transport connectTransport() throws MessagingException {
+			connections.incrementAndGet();
+			return super.connectTransport();
+		}
+
+		@Override
+		protected void doSend(MimeMessage[] mimeMessages, Object[] originalMessages) {
+			batches.incrementAndGet();
+			List<MimeMessage> accepted = new ArrayList<>();
+			Map<Object, Exception> failures = new LinkedHashMap<>();
+			for (MimeMessage message : mimeMessages) {
+				try {
+					if (bounced.contains(message.getAllRecipients()[0].toString())) {
+						failures.put(message, new MessagingException("550 Mailbox unavailable"));
+						continue;
+					}
+				} catch (MessagingException e) {
+					throw new IllegalStateException(e);
+				}
+				accepted.add(message);
+			}
+
+			super.doSend(accepted.toArray(MimeMessage[]::new), null);
+			if (!failures.isEmpty()) {
+				throw new MailSendException(failures);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,201 @@
+package vn.fruit.anna.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import vn.fruit.anna.AnnaApplication;
+import vn.fruit.anna.dto.request.CreateOrderRequest;
+import vn.fruit.anna.dto.request.OrderItemRequest;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Order throughput and p99 latency on MySQL with one transaction per order, next to group commit.
+ *
+ * Both runs place the same concurrent load on a small set of products, so orders contend for the
+ * same stock rows. Each run starts the whole application against the same container and checks
+ * that every placed unit was taken off the rows exactly once.
+ *
+ * Run with {@code mvn test -Dbenchmarks=true}; needs Docker.
+ */
+@EnabledIfSystemProperty(named = "benchmarks", matches = "true")
+@Testcontainers(disabledWithoutDocker = true)
+class OrderGroupCommitBenchmarkTest {
+
+	private static final int THREADS = 64;
+	private static final int WARMUP_ORDERS_PER_THREAD = 5;
+	private static final int ORDERS_PER_THREAD = 50;
+	private static final int PRODUCTS = 20;
+	private static final int CUSTOMERS = 200;
+	private static final int STOCK = 1_000_000;
+
+	@Container
+	static final MySQLContainer<?> MYSQL = new MySQLContainer<>("mysql:8.0")
+			.withUrlParam("rewriteBatchedStatements", "true");
+
+	private record Result(double ordersPerSecond, long p50Micros, long p99Micros, int failed) {
+	}
+
+	@Test
+	void groupCommitAgainstTransactionPerOrder() throws Exception {
+		Result perOrder = run(false);
+		Result grouped = run(true);
+
+		System.out.printf("transaction per order: %,8.0f orders/s, p50 %,7d us, p99 %,7d us, %d failed%n",
+				perOrder.ordersPerSecond(), perOrder.p50Micros(), perOrder.p99Micros(), perOrder.failed());
+		System.out.printf("group commit:          %,8.0f orders/s, p50 %,7d us, p99 %,7d us, %d failed%n",
+				grouped.ordersPerSecond(), grouped.p50Micros(), grouped.p99Micros(), grouped.failed());
+
+		assertEquals(0, perOrder.failed());
+		assertEquals(0, grouped.failed());
+	}
+
+	private Result run(boolean groupCommit) throws Exception {
+		try (ConfigurableApplicationContext context = start(groupCommit)) {
+			OrderService orderService = context.getBean(OrderService.class);
+			JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+
+			jdbcTemplate.update("UPDATE product SET stock = ?", STOCK);
+			List<UUID> productIds = jdbcTemplate.queryForList("SELECT id FROM product ORDER BY id LIMIT ?", String.class, PRODUCTS)
+					.stream()
+					.map(UUID::fromString)
+					.toList();
+			assertFalse(productIds.isEmpty(), "no products to order");
+
+			Map<UUID, LongAdder> ordered = new ConcurrentHashMap<>();
+
+			// Customers are created up front; two orders creating the same one at once would make its name ambiguous
+			for (int customer = 0; customer < CUSTOMERS; customer++) {
+				Map<UUID, Integer> quantities = Map.of(productIds.get(customer % productIds.size()), 1);
+				orderService.createOrder(request(customer, quantities));
+				record(ordered, quantities);
+			}
+			place(orderService, productIds, WARMUP_ORDERS_PER_THREAD, ordered, new ConcurrentLinkedQueue<>(), new AtomicInteger());
+
+			ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+			AtomicInteger failed = new AtomicInteger();
+			long startedAt = System.nanoTime();
+			place(orderService, productIds, ORDERS_PER_THREAD, ordered, latencies, failed);
+			long elapsed = System.nanoTime() - startedAt;
+
+			for (UUID productId : productIds) {
+				Integer stock = jdbcTemplate.queryForObject("SELECT stock FROM product WHERE id = ?", Integer.class, productId.toString());
+				long sold = ordered.containsKey(productId) ? ordered.get(productId).sum() : 0;
+				assertEquals(STOCK - sold, (long) stock, "stock of " + productId);
+			}
+
+			long[] sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+			return new Result(
+					sorted.length / (elapsed / 1e9),
+					percentile(sorted, 0.50) / 1_000,
+					percentile(sorted, 0.99) / 1_000,
+					failed.get());
+		}
+	}
+
+	private static void place(OrderService orderService,
+							  List<UUID> productIds,
+							  int ordersPerThread,
+							  Map<UUID, LongAdder> ordered,
+							  Queue<Long> latencies,
+							  AtomicInteger failed) throws Exception {
+		CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Future<?>> workers = new ArrayList<>();
+			for (int t = 0; t < THREADS; t++) {
+				workers.add(executor.submit(() -> {
+					start.await();
+					ThreadLocalRandom random = ThreadLocalRandom.current();
+					for (int i = 0; i < ordersPerThread; i++) {
+						Map<UUID, Integer> quantities = new HashMap<>();
+						int lines = random.nextInt(1, 4);
+						for (int line = 0; line < lines; line++) {
+							quantities.merge(productIds.get(random.nextInt(productIds.size())), random.nextInt(1, 4), Integer::sum);
+						}
+
+						CreateOrderRequest request = request(random.nextInt(CUSTOMERS), quantities);
+						long placedAt = System.nanoTime();
+						try {
+							orderService.createOrder(request);
+						} catch (RuntimeException e) {
+							failed.incrementAndGet();
+							continue;
+						}
+						latencies.add(System.nanoTime() - placedAt);
+						record(ordered, quantities);
+					}
+					return null;
+				}));
+			}
+
+			start.countDown();
+			for (Future<?> worker : workers) {
+				worker.get(10, TimeUnit.MINUTES);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static CreateOrderRequest request(int customer, Map<UUID, Integer> quantities) {
+		return CreateOrderRequest.builder()
+				// The trailing # keeps the name lookup from matching a longer name
+				.customerName(String.format("Benchmark customer %03d#", customer))
+				.customerAddress("1 Benchmark Street")
+				.customerPhone("0900000000")
+				.orderItemRequests(quantities.entrySet().stream()
+						.map(entry -> OrderItemRequest.builder()
+								.productId(entry.getKey())
+								.quantity(entry.getValue())
+								.build())
+						.toList())
+				.build();
+	}
+
+	private static void record(Map<UUID, LongAdder> ordered, Map<UUID, Integer> quantities) {
+		quantities.forEach((productId, quantity) -> ordered.computeIfAbsent(productId, id -> new LongAdder()).add(quantity));
+	}
+
+	private static ConfigurableApplicationContext start(boolean groupCommit) {
+		return new SpringApplicationBuilder(AnnaApplication.class)
+				.properties(
+						"server.port=0",
+						"spring.datasource.url=" + MYSQL.getJdbcUrl(),
+						"spring.datasource.username=" + MYSQL.getUsername(),
+						"spring.datasource.password=" + MYSQL.getPassword(),
+						"spring.jpa.show-sql=false",
+						"order.group-commit.enabled=" + groupCommit,
+						// Orders are placed without an email, but nothing must reach a mail server either way
+						"mail.outbox.poll-interval-ms=3600000",
+						"media.deletion.poll-interval-ms=3600000",
+						"SMTP_USERNAME=benchmark",
+						"SMTP_PASSWORD=benchmark",
+						"CLOUDINARY_CLOUD_NAME=benchmark",
+						"CLOUDINARY_API_KEY=benchmark",
+						"CLOUDINARY_API_SECRET=benchmark",
+						"JWT_ACCESS_EXPIRY_TIME=3600000",
+						"JWT_REFRESH_EXPIRY_TIME=86400000",
+						"JWT_SECRET_KEY=" + Base64.getEncoder().encodeToString(new byte[32]),
+						"JWT_REFRESH_KEY=" + Base64.getEncoder().encodeToString(new byte[32]))
+				.run();
+	}
+
+	private static long percentile(long[] sorted, double percentile) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+		return sorted[Math.min(sorted.length - 1, (int) Math.ceil(percentile * sorted.length) - 1)];
+	}
+
+}
@@ -0,0 +1,84 @@
+package vn.fruit.anna.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import vn.fruit.anna.repository.ProductRepository;
+
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Sampling latency from 1k to 1M products, next to an in-memory stand-in for
+ * {@code ORDER BY RAND() LIMIT 12}, which has to draw a random key for every row.
+ *
+ * Run with {@code mvn test -Dbenchmarks=true}.
+ */
+@EnabledIfSystemProperty(named = "benchmarks", matches = "true")
+class RandomProductSamplerBenchmarkTest {
+
+	private static final int SAMPLE_SIZE = 12;
+	private static final int[] CATALOG_SIZES = {1_000, 10_000, 100_000, 1_000_000};
+
+	@Test
+	void samplingLatencyStaysFlatAsTheCatalogGrows() {
+		Map<Integer, Long> samplerNanos = new LinkedHashMap<>();
+		for (int size : CATALOG_SIZES) {
+			List<UUID> ids = ids(size);
+			ProductRepository productRepository = mock(ProductRepository.class);
+			when(productRepository.findAllIds()).thenReturn(ids);
+			RandomProductSampler sampler = new RandomProductSampler(productRepository);
+			sampler.reload();
+
+			long sampled = medianNanos(10_000, () -> assertEquals(SAMPLE_SIZE, sampler.sample(SAMPLE_SIZE).size()));
+			long orderByRand = medianNanos(size >= 100_000 ? 20 : 200, () -> orderByRand(ids));
+			samplerNanos.put(size, sampled);
+			System.out.printf("%,10d products: sampler %,8d ns, ORDER BY RAND() stand-in %,12d ns%n",
+					size, sampled, orderByRand);
+		}
+
+		// Generous bound for noisy machines; a scan would be ~1000x slower at 1M
+		long smallest = Math.max(samplerNanos.get(CATALOG_SIZES[0]), 1);
+		long largest = samplerNanos.get(CATALOG_SIZES[CATALOG_SIZES.length - 1]);
+		assertTrue(largest < smallest * 10, "sampling got slower with the catalog: " + samplerNanos);
+	}
+
+	private static List<UUID> orderByRand(List<UUID> ids) {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		PriorityQueue<Map.Entry<Double, UUID>> top = new PriorityQueue<>(Map.Entry.comparingByKey(Comparator.reverseOrder()));
+		for (UUID id : ids) {
+			top.add(Map.entry(random.nextDouble(), id));
+			if (top.size() > SAMPLE_SIZE) {
+				top.poll();
+			}
+		}
+		return top.stream().map(Map.Entry::getValue).toList();
+	}
+
+	private static long medianNanos(int iterations, Runnable task) {
+		for (int i = 0; i < iterations; i++) {
+			task.run();
+		}
+
+		long[] timings = new long[iterations];
+		for (int i = 0; i < iterations; i++) {
+			long startedAt = System.nanoTime();
+			task.run();
+			timings[i] = System.nanoTime() - startedAt;
+		}
+		Arrays.sort(timings);
+		return timings[iterations / 2];
+	}
+
+	private static List<UUID> ids(int size) {
+		List<UUID> ids = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			ids.add(new UUID(0, i));
+		}
+		return ids;
+	}
+
+}
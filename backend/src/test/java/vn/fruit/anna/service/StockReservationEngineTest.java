@@ -0,0 +1,131 @@
+package vn.fruit.anna.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StockReservationEngineTest {
+
+	private static final int INITIAL_STOCK = 5_000;
+	private static final int THREADS = 32;
+	private static final int ATTEMPTS_PER_THREAD = 2_000;
+
+	@Test
+	void neverOversellsUnderContention() throws Exception {
+		AtomicLong clock = new AtomicLong();
+		StockReservationEngine engine = new StockReservationEngine(16, 1_000, clock::get);
+		UUID first = new UUID(0, 1);
+		UUID second = new UUID(0, 2);
+		engine.track(first, INITIAL_STOCK);
+		engine.track(second, INITIAL_STOCK);
+
+		ConcurrentLinkedQueue<StockReservationEngine.Reservation> abandoned = new ConcurrentLinkedQueue<>();
+		Map<UUID, LongAdder> committed = new ConcurrentHashMap<>();
+		CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS + 1);
+		List<Future<?>> workers = new ArrayList<>();
+
+		for (int t = 0; t < THREADS; t++) {
+			workers.add(executor.submit(() -> {
+				start.await();
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				for (int i = 0; i < ATTEMPTS_PER_THREAD; i++) {
+					Map<UUID, Integer> quantities = new HashMap<>();
+					quantities.put(first, random.nextInt(1, 4));
+					if (random.nextBoolean()) {
+						quantities.put(second, random.nextInt(1, 4));
+					}
+
+					StockReservationEngine.Reservation reservation = engine.reserve(quantities);
+					if (reservation == null) {
+						continue;
+					}
+					switch (random.nextInt(4)) {
+						case 0 -> engine.release(reservation);
+						// Left for the reaper, like a request that never finished
+						case 1 -> abandoned.add(reservation);
+						default -> {
+							if (engine.confirm(reservation) && engine.commit(reservation)) {
+								reservation.getQuantities().forEach((productId, quantity) ->
+										committed.computeIfAbsent(productId, id -> new LongAdder()).add(quantity));
+							}
+						}
+					}
+				}
+				return null;
+			}));
+		}
+
+		// Keeps time moving and expiring reservations while orders are placed
+		Future<?> reaper = executor.submit(() -> {
+			start.await();
+			while (!Thread.currentThread().isInterrupted()) {
+				clock.addAndGet(100);
+				engine.expire();
+				Thread.onSpinWait();
+			}
+			return null;
+		});
+
+		start.countDown();
+		for (Future<?> worker : workers) {
+			worker.get(1, TimeUnit.MINUTES);
+		}
+		reaper.cancel(true);
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+		clock.addAndGet(10_000);
+		engine.expire();
+
+		for (UUID productId : List.of(first, second)) {
+			long sold = committed.containsKey(productId) ? committed.get(productId).sum() : 0;
+			assertTrue(sold <= INITIAL_STOCK, "oversold " + productId);
+			assertEquals(INITIAL_STOCK, engine.available(productId) + sold);
+		}
+		abandoned.forEach(reservation ->
+				assertEquals(StockReservationEngine.State.EXPIRED, reservation.getState()));
+	}
+
+	@Test
+	void expiredReservationCannotBeConfirmed() {
+		AtomicLong clock = new AtomicLong();
+		StockReservationEngine engine = new StockReservationEngine(4, 1_000, clock::get);
+		UUID product = UUID.randomUUID();
+		engine.track(product, 10);
+
+		StockReservationEngine.Reservation reservation = engine.reserve(Map.of(product, 10));
+		assertNotNull(reservation);
+		assertNull(engine.reserve(Map.of(product, 1)));
+
+		clock.addAndGet(1_000);
+		assertEquals(1, engine.expire());
+		assertFalse(engine.confirm(reservation));
+		assertEquals(10, engine.available(product));
+	}
+
+	@Test
+	void surrenderLeavesReservedUnitsAlone() {
+		StockReservationEngine engine = new StockReservationEngine(4, 1_000, System::nanoTime);
+		UUID product = UUID.randomUUID();
+		engine.track(product, 0);
+		assertNull(engine.reserve(Map.of(product, 1)));
+
+		engine.add(product, 10);
+		StockReservationEngine.Reservation reservation = engine.reserve(Map.of(product, 3));
+		assertNotNull(reservation);
+
+		assertEquals(7, engine.surrender(product));
+		assertEquals(0, engine.available(product));
+
+		// A rollback after the surrender gives its units back to the engine, not to the row
+		engine.release(reservation);
+		assertEquals(3, engine.available(product));
+	}
+
+}